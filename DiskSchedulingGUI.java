@@ -1,16 +1,2792 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.*;
 
+// Disk head state shared by the scheduler and its policy. Cylinders run from
+// 0 to maxCylinder inclusive; unless disabled for long replays, every
+// position the head visits is recorded.
+class DiskHead {
+    private final int maxCylinder;
+    private final boolean recordPath;
+    private int position;
+    private boolean movingUp;
+    private long movement;
+    private long returnMovement;
+    private int[] path = new int[16];
+    private int pathLength;
+    // Path steps that were wrap-around returns rather than service sweeps
+    private final BitSet returnSteps = new BitSet();
+
+    public DiskHead(int maxCylinder, int position, boolean movingUp) {
+        this(maxCylinder, position, movingUp, true);
+    }
+
+    public DiskHead(int maxCylinder, int position, boolean movingUp, boolean recordPath) {
+        if (position < 0 || position > maxCylinder) {
+            throw new IllegalArgumentException("Head position " + position + " outside 0.." + maxCylinder);
+        }
+        this.maxCylinder = maxCylinder;
+        this.recordPath = recordPath;
+        this.position = position;
+        this.movingUp = movingUp;
+        path[pathLength++] = position;
+    }
+
+    public void moveTo(int cylinder) {
+        if (cylinder == position) {
+            return;
+        }
+        movingUp = cylinder > position;
+        record(cylinder);
+    }
+
+    // Wrap-around jump of the circular policies: no requests are served on
+    // the way and the sweep direction is kept
+    public void returnTo(int cylinder) {
+        if (cylinder == position) {
+            return;
+        }
+        returnMovement += Math.abs(cylinder - position);
+        if (recordPath) {
+            returnSteps.set(pathLength);
+        }
+        record(cylinder);
+    }
+
+    private void record(int cylinder) {
+        if (cylinder < 0 || cylinder > maxCylinder) {
+            throw new IllegalArgumentException("Cylinder " + cylinder + " outside 0.." + maxCylinder);
+        }
+        movement += Math.abs(cylinder - position);
+        position = cylinder;
+        if (!recordPath) {
+            return;
+        }
+        if (pathLength == path.length) {
+            path = Arrays.copyOf(path, 2 * pathLength);
+        }
+        path[pathLength++] = cylinder;
+    }
+
+    public void reverse() {
+        movingUp = !movingUp;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean isMovingUp() {
+        return movingUp;
+    }
+
+    public int getMaxCylinder() {
+        return maxCylinder;
+    }
+
+    public boolean isRecordingPath() {
+        return recordPath;
+    }
+
+    // Total distance travelled, return sweeps included
+    public long getMovement() {
+        return movement;
+    }
+
+    public long getReturnMovement() {
+        return returnMovement;
+    }
+
+    public BitSet getReturnSteps() {
+        return (BitSet) returnSteps.clone();
+    }
+
+    // Head positions in visiting order, starting with the initial one
+    public int[] getPath() {
+        return Arrays.copyOf(path, pathLength);
+    }
+}
+
+// Decides which pending request the head serves next. Policies that care
+// about time or request type override the timed variants; the others only
+// implement the plain ones.
+interface DiskSchedulingPolicy {
+    String[] NAMES = {"FCFS", "SSTF", "SCAN", "C-SCAN", "LOOK", "C-LOOK", "Deadline", "Anticipatory", "SATF"};
+    // Returned by next to keep the head idle although requests are pending
+    int IDLE = -1;
+
+    String getName();
+
+    void add(int request, int cylinder);
+
+    // offset is the request's first sector within the cylinder, sectors its length
+    default void add(int request, int cylinder, int offset, int sectors, boolean write, long now) {
+        add(request, cylinder);
+    }
+
+    boolean isEmpty();
+
+    // Removes and returns the next request. A policy may move the head on
+    // its own first, e.g. to the disk edge before reversing.
+    int next(DiskHead head);
+
+    default int next(DiskHead head, long now) {
+        return next(head);
+    }
+
+    // After next returned IDLE: when to ask again, unless a request arrives
+    // first. Must lie after the time passed to next.
+    default long idleUntil() {
+        return Long.MAX_VALUE;
+    }
+
+    // The request last returned by next has been served
+    default void completed(long now) {
+    }
+
+    // Every request has been served; the head may still finish its sweep
+    default void drained(DiskHead head) {
+    }
+
+    static DiskSchedulingPolicy forName(String name, int maxCylinder) {
+        return forName(name, maxCylinder, new LinearCostModel(1, 0));
+    }
+
+    // SATF costs requests with the model; Deadline and Anticipatory take
+    // their time base from it
+    static DiskSchedulingPolicy forName(String name, int maxCylinder, DiskCostModel model) {
+        switch (name) {
+            case "FCFS":
+                return new FcfsPolicy();
+            case "SSTF":
+                return new SstfPolicy(maxCylinder);
+            case "SCAN":
+                return new ScanPolicy(maxCylinder, true, false);
+            case "C-SCAN":
+                return new ScanPolicy(maxCylinder, true, true);
+            case "LOOK":
+                return new ScanPolicy(maxCylinder, false, false);
+            case "C-LOOK":
+                return new ScanPolicy(maxCylinder, false, true);
+            case "Deadline":
+                return new DeadlinePolicy(maxCylinder, model);
+            case "Anticipatory":
+                return new AnticipatoryPolicy(maxCylinder, model);
+            case "SATF":
+                return new SatfPolicy(maxCylinder, model);
+            default:
+                throw new IllegalArgumentException("Unknown disk scheduling algorithm: " + name);
+        }
+    }
+}
+
+// Pending requests keyed by cylinder. A Fenwick tree over per-cylinder
+// counts finds the nearest occupied cylinder on either side in O(log C);
+// requests on the same cylinder are kept in arrival order, doubly linked so
+// any of them can be taken out.
+class CylinderQueue {
+    private final int cylinders;
+    private final int[] tree;
+    private final int[] first;
+    private final int[] last;
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int[] cylinderOf = new int[16];
+    private int size;
+    private final int topBit;
+
+    public CylinderQueue(int maxCylinder) {
+        cylinders = maxCylinder + 1;
+        tree = new int[cylinders + 1];
+        first = new int[cylinders];
+        last = new int[cylinders];
+        Arrays.fill(first, -1);
+        topBit = Integer.highestOneBit(cylinders);
+    }
+
+    public void add(int request, int cylinder) {
+        if (cylinder < 0 || cylinder >= cylinders) {
+            throw new IllegalArgumentException("Cylinder " + cylinder + " outside 0.." + (cylinders - 1));
+        }
+        if (request >= next.length) {
+            int length = Math.max(request + 1, 2 * next.length);
+            next = Arrays.copyOf(next, length);
+            prev = Arrays.copyOf(prev, length);
+            cylinderOf = Arrays.copyOf(cylinderOf, length);
+        }
+        next[request] = -1;
+        cylinderOf[request] = cylinder;
+        if (first[cylinder] == -1) {
+            first[cylinder] = request;
+            prev[request] = -1;
+        } else {
+            next[last[cylinder]] = request;
+            prev[request] = last[cylinder];
+        }
+        last[cylinder] = request;
+        for (int i = cylinder + 1; i <= cylinders; i += i & -i) {
+            tree[i]++;
+        }
+        size++;
+    }
+
+    // Removes and returns the oldest request waiting on the cylinder
+    public int poll(int cylinder) {
+        int request = first[cylinder];
+        remove(request);
+        return request;
+    }
+
+    // Removes a pending request wherever it is in its cylinder's queue
+    public void remove(int request) {
+        int cylinder = cylinderOf[request];
+        int before = prev[request];
+        int after = next[request];
+        if (before == -1) {
+            first[cylinder] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after == -1) {
+            last[cylinder] = before;
+        } else {
+            prev[after] = before;
+        }
+        for (int i = cylinder + 1; i <= cylinders; i += i & -i) {
+            tree[i]--;
+        }
+        size--;
+    }
+
+    // Oldest request waiting on the cylinder, or -1
+    public int first(int cylinder) {
+        return first[cylinder];
+    }
+
+    // Request queued after the given one on the same cylinder, or -1
+    public int next(int request) {
+        return next[request];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Lowest occupied cylinder at or above the given one, or -1
+    public int ceiling(int cylinder) {
+        int before = countBelow(cylinder);
+        return before == size ? -1 : select(before);
+    }
+
+    // Highest occupied cylinder at or below the given one, or -1
+    public int floor(int cylinder) {
+        int upTo = countBelow(cylinder + 1);
+        return upTo == 0 ? -1 : select(upTo - 1);
+    }
+
+    // Pending requests on cylinders below the given one
+    private int countBelow(int cylinder) {
+        int count = 0;
+        for (int i = Math.min(cylinder, cylinders); i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    // Cylinder holding the k-th pending request (0-based) in cylinder order
+    private int select(int k) {
+        int index = 0;
+        for (int bit = topBit; bit > 0; bit >>= 1) {
+            int probe = index + bit;
+            if (probe <= cylinders && tree[probe] <= k) {
+                index = probe;
+                k -= tree[probe];
+            }
+        }
+        return index;
+    }
+}
+
+class FcfsPolicy implements DiskSchedulingPolicy {
+    private int[] queue = new int[16];
+    private int head;
+    private int size;
+
+    @Override
+    public String getName() {
+        return "FCFS";
+    }
+
+    @Override
+    public void add(int request, int cylinder) {
+        if (size == queue.length) {
+            int[] grown = new int[2 * size];
+            for (int i = 0; i < size; i++) {
+                grown[i] = queue[(head + i) % queue.length];
+            }
+            queue = grown;
+            head = 0;
+        }
+        queue[(head + size++) % queue.length] = request;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int next(DiskHead head) {
+        int request = queue[this.head];
+        this.head = (this.head + 1) % queue.length;
+        size--;
+        return request;
+    }
+}
+
+// Shortest seek time first; ties go to the side the head is already moving
+class SstfPolicy implements DiskSchedulingPolicy {
+    private final CylinderQueue pending;
+
+    public SstfPolicy(int maxCylinder) {
+        pending = new CylinderQueue(maxCylinder);
+    }
+
+    @Override
+    public String getName() {
+        return "SSTF";
+    }
+
+    @Override
+    public void add(int request, int cylinder) {
+        pending.add(request, cylinder);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    @Override
+    public int next(DiskHead head) {
+        int position = head.getPosition();
+        int below = pending.floor(position);
+        int above = pending.ceiling(position);
+        int target;
+        if (below == -1) {
+            target = above;
+        } else if (above == -1) {
+            target = below;
+        } else {
+            long down = position - below;
+            long up = above - position;
+            target = up < down || (up == down && head.isMovingUp()) ? above : below;
+        }
+        return pending.poll(target);
+    }
+}
+
+// The elevator family. SCAN sweeps to the disk edge and reverses, LOOK
+// reverses at the last pending request. The circular variants (C-SCAN,
+// C-LOOK) serve in one direction only and jump back for the next sweep.
+// SCAN and C-SCAN carry the first sweep on to the edge even when nothing
+// is left behind the head.
+class ScanPolicy implements DiskSchedulingPolicy {
+    private final CylinderQueue pending;
+    private final boolean toEdge;
+    private final boolean circular;
+    private boolean turned;
+
+    public ScanPolicy(int maxCylinder, boolean toEdge, boolean circular) {
+        pending = new CylinderQueue(maxCylinder);
+        this.toEdge = toEdge;
+        this.circular = circular;
+    }
+
+    @Override
+    public String getName() {
+        return (circular ? "C-" : "") + (toEdge ? "SCAN" : "LOOK");
+    }
+
+    @Override
+    public void add(int request, int cylinder) {
+        pending.add(request, cylinder);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    @Override
+    public int next(DiskHead head) {
+        boolean up = head.isMovingUp();
+        int target = up ? pending.ceiling(head.getPosition()) : pending.floor(head.getPosition());
+        if (target != -1) {
+            return pending.poll(target);
+        }
+
+        int edge = up ? head.getMaxCylinder() : 0;
+        int oppositeEdge = up ? 0 : head.getMaxCylinder();
+        if (toEdge) {
+            head.moveTo(edge);
+        }
+        turned = true;
+        if (circular) {
+            // Restart the sweep from the far end: the disk edge for C-SCAN,
+            // the farthest pending request for C-LOOK
+            target = up ? pending.ceiling(0) : pending.floor(head.getMaxCylinder());
+            head.returnTo(toEdge ? oppositeEdge : target);
+        } else {
+            head.reverse();
+            target = up ? pending.floor(head.getPosition()) : pending.ceiling(head.getPosition());
+        }
+        return pending.poll(target);
+    }
+
+    @Override
+    public void drained(DiskHead head) {
+        if (toEdge && !turned) {
+            head.moveTo(head.isMovingUp() ? head.getMaxCylinder() : 0);
+        }
+    }
+}
+
+// Linux-style deadline scheduling. Reads and writes each have a queue
+// sorted by cylinder and a FIFO in arrival order with an expiry time.
+// Requests go out in batches of up to FIFO_BATCH in ascending cylinder
+// order. A new batch picks reads unless writes have been passed over
+// WRITES_STARVED times, and it starts at the oldest request of its class
+// once that one has expired, or when nothing is left above the head.
+class DeadlinePolicy implements DiskSchedulingPolicy {
+    static final int FIFO_BATCH = 16;
+    static final int WRITES_STARVED = 2;
+    static final int READ = 0;
+    static final int WRITE = 1;
+
+    private final CylinderQueue[] sorted;
+    private final ExpiryFifo[] fifos;
+    private final long[] expire;
+    // Stamp of each pending slot, 0 once dispatched, so FIFO entries of
+    // requests already served in cylinder order are skipped
+    private long[] slotStamp = new long[16];
+    private int[] slotCylinder = new int[16];
+    private long stamps;
+    private int direction = READ;
+    private int batch = FIFO_BATCH;
+    private int starved;
+    private boolean lastWrite;
+    private int lastCylinder;
+    // Latest time seen, for callers that do not pass the clock
+    private long clock;
+
+    // Linux defaults in milliseconds
+    public DeadlinePolicy(int maxCylinder) {
+        this(maxCylinder, 500, 5000);
+    }
+
+    // The same defaults in the model's time units
+    public DeadlinePolicy(int maxCylinder, DiskCostModel model) {
+        this(maxCylinder, millis(model, 500), millis(model, 5000));
+    }
+
+    public DeadlinePolicy(int maxCylinder, long readExpire, long writeExpire) {
+        sorted = new CylinderQueue[]{new CylinderQueue(maxCylinder), new CylinderQueue(maxCylinder)};
+        fifos = new ExpiryFifo[]{new ExpiryFifo(), new ExpiryFifo()};
+        expire = new long[]{readExpire, writeExpire};
+    }
+
+    @Override
+    public String getName() {
+        return "Deadline";
+    }
+
+    // Converts milliseconds to the model's time units, at least one unit
+    static long millis(DiskCostModel model, double ms) {
+        return Math.max(1, Math.round(ms * model.unitsPerSecond() / 1000));
+    }
+
+    @Override
+    public void add(int request, int cylinder) {
+        add(request, cylinder, 0, 1, false, clock);
+    }
+
+    @Override
+    public void add(int request, int cylinder, int offset, int sectors, boolean write, long now) {
+        clock = Math.max(clock, now);
+        int type = write ? WRITE : READ;
+        sorted[type].add(request, cylinder);
+        if (request >= slotStamp.length) {
+            int length = Math.max(request + 1, 2 * slotStamp.length);
+            slotStamp = Arrays.copyOf(slotStamp, length);
+            slotCylinder = Arrays.copyOf(slotCylinder, length);
+        }
+        slotStamp[request] = ++stamps;
+        slotCylinder[request] = cylinder;
+        fifos[type].add(request, stamps, now + expire[type]);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return sorted[READ].isEmpty() && sorted[WRITE].isEmpty();
+    }
+
+    @Override
+    public int next(DiskHead head) {
+        return next(head, clock);
+    }
+
+    @Override
+    public int next(DiskHead head, long now) {
+        clock = Math.max(clock, now);
+        int position = head.getPosition();
+        if (batch < FIFO_BATCH) {
+            int target = sorted[direction].ceiling(position);
+            if (target != -1) {
+                return dispatch(direction, target);
+            }
+        }
+
+        boolean reads = !sorted[READ].isEmpty();
+        boolean writes = !sorted[WRITE].isEmpty();
+        if (reads && (!writes || starved < WRITES_STARVED)) {
+            direction = READ;
+            if (writes) {
+                starved++;
+            }
+        } else {
+            direction = WRITE;
+            starved = 0;
+        }
+        batch = 0;
+        int target = sorted[direction].ceiling(position);
+        if (target == -1 || expired(direction, now)) {
+            // The oldest request is also the oldest on its cylinder, so
+            // polling that cylinder serves it
+            target = slotCylinder[oldest(direction)];
+        }
+        return dispatch(direction, target);
+    }
+
+    // True if the oldest pending request of the class is past its deadline
+    boolean expired(int type, long now) {
+        if (sorted[type].isEmpty()) {
+            return false;
+        }
+        oldest(type);
+        return fifos[type].peekDeadline() <= now;
+    }
+
+    // Earliest deadline of any pending request, or Long.MAX_VALUE
+    long nextDeadline() {
+        long deadline = Long.MAX_VALUE;
+        for (int type = READ; type <= WRITE; type++) {
+            if (!sorted[type].isEmpty()) {
+                oldest(type);
+                deadline = Math.min(deadline, fifos[type].peekDeadline());
+            }
+        }
+        return deadline;
+    }
+
+    // Pending request of the class closest to the position within distance,
+    // as its cylinder, or -1
+    int nearest(int type, int position, int distance) {
+        int below = sorted[type].floor(position);
+        int above = sorted[type].ceiling(position);
+        if (below != -1 && (above == -1 || position - below <= above - position)) {
+            return position - below <= distance ? below : -1;
+        }
+        return above != -1 && above - position <= distance ? above : -1;
+    }
+
+    // Serves the oldest request of the class on the cylinder and counts it
+    // towards the running batch
+    int dispatch(int type, int cylinder) {
+        int request = sorted[type].poll(cylinder);
+        slotStamp[request] = 0;
+        direction = type;
+        batch++;
+        lastWrite = type == WRITE;
+        lastCylinder = cylinder;
+        return request;
+    }
+
+    // Whether the last dispatched request was a write
+    boolean lastWasWrite() {
+        return lastWrite;
+    }
+
+    // Cylinder of the last dispatched request
+    int lastCylinder() {
+        return lastCylinder;
+    }
+
+    // Slot of the oldest pending request of the class, dropping FIFO entries
+    // that were served out of order
+    private int oldest(int type) {
+        ExpiryFifo fifo = fifos[type];
+        while (slotStamp[fifo.peekSlot()] != fifo.peekStamp()) {
+            fifo.pop();
+        }
+        return fifo.peekSlot();
+    }
+
+    // Ring buffer of (slot, stamp, deadline) in arrival order
+    private static final class ExpiryFifo {
+        private int[] slots = new int[16];
+        private long[] stamps = new long[16];
+        private long[] deadlines = new long[16];
+        private int head;
+        private int size;
+
+        void add(int slot, long stamp, long deadline) {
+            if (size == slots.length) {
+                int[] grownSlots = new int[2 * size];
+                long[] grownStamps = new long[2 * size];
+                long[] grownDeadlines = new long[2 * size];
+                for (int i = 0; i < size; i++) {
+                    int from = (head + i) % slots.length;
+                    grownSlots[i] = slots[from];
+                    grownStamps[i] = stamps[from];
+                    grownDeadlines[i] = deadlines[from];
+                }
+                slots = grownSlots;
+                stamps = grownStamps;
+                deadlines = grownDeadlines;
+                head = 0;
+            }
+            int tail = (head + size++) % slots.length;
+            slots[tail] = slot;
+            stamps[tail] = stamp;
+            deadlines[tail] = deadline;
+        }
+
+        int peekSlot() {
+            return slots[head];
+        }
+
+        long peekStamp() {
+            return stamps[head];
+        }
+
+        long peekDeadline() {
+            return deadlines[head];
+        }
+
+        void pop() {
+            head = (head + 1) % slots.length;
+            size--;
+        }
+    }
+}
+
+// Anticipatory scheduling on top of deadline: after a read completes the
+// head stays idle for a short window, betting that the next read lands
+// close by, instead of seeking away to other pending work. The bet ends
+// when a read shows up within NEAR cylinders, when a deadline expires or
+// when the window runs out. Every read completion is scored, whether the
+// head idled or not: a hit if the next read lands within NEAR cylinders and
+// arrives within the window (or was already queued). The policy only
+// anticipates while the running hit rate is at least MIN_HIT_RATE, so
+// random workloads fall back to plain deadline scheduling.
+class AnticipatoryPolicy extends DeadlinePolicy {
+    static final double MIN_HIT_RATE = 0.5;
+
+    private final long window;
+    private final int near;
+    private long anticipateUntil = Long.MIN_VALUE;
+    // Running average of outcomes, weighted 1/8 per sample as in Linux AS
+    private double hitRate = 1;
+    // Read completion being scored, or Long.MIN_VALUE
+    private long scoreUntil = Long.MIN_VALUE;
+    private int scoreCylinder;
+
+    // A 6 ms window as in Linux, and "close" meaning within 1/64 of the disk
+    public AnticipatoryPolicy(int maxCylinder) {
+        this(maxCylinder, 6, Math.max(1, (maxCylinder + 1) / 64));
+    }
+
+    // The same defaults in the model's time units
+    public AnticipatoryPolicy(int maxCylinder, DiskCostModel model) {
+        this(maxCylinder, millis(model, 500), millis(model, 5000), millis(model, 6),
+                Math.max(1, (maxCylinder + 1) / 64));
+    }
+
+    public AnticipatoryPolicy(int maxCylinder, long window, int near) {
+        this(maxCylinder, 500, 5000, window, near);
+    }
+
+    public AnticipatoryPolicy(int maxCylinder, long readExpire, long writeExpire, long window, int near) {
+        super(maxCylinder, readExpire, writeExpire);
+        this.window = window;
+        this.near = near;
+    }
+
+    @Override
+    public String getName() {
+        return "Anticipatory";
+    }
+
+    @Override
+    public void add(int request, int cylinder, int offset, int sectors, boolean write, long now) {
+        super.add(request, cylinder, offset, sectors, write, now);
+        if (scoreUntil != Long.MIN_VALUE && now >= scoreUntil) {
+            score(false);
+        }
+        if (!write && scoreUntil != Long.MIN_VALUE && Math.abs(cylinder - scoreCylinder) <= near) {
+            score(true);
+        }
+    }
+
+    @Override
+    public void completed(long now) {
+        anticipateUntil = Long.MIN_VALUE;
+        if (!lastWasWrite()) {
+            if (scoreUntil != Long.MIN_VALUE) {
+                // A read was queued behind the scored one: a hit if it was near
+                score(Math.abs(lastCylinder() - scoreCylinder) <= near);
+            }
+            scoreUntil = now + window;
+            scoreCylinder = lastCylinder();
+            if (hitRate >= MIN_HIT_RATE && !expired(READ, now) && !expired(WRITE, now)) {
+                anticipateUntil = now + window;
+            }
+        }
+    }
+
+    private void score(boolean hit) {
+        hitRate += ((hit ? 1 : 0) - hitRate) / 8;
+        scoreUntil = Long.MIN_VALUE;
+    }
+
+    // Share of recent read completions followed by a near read in time
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    @Override
+    public int next(DiskHead head, long now) {
+        if (now < anticipateUntil && !expired(READ, now) && !expired(WRITE, now)) {
+            int target = nearest(READ, head.getPosition(), near);
+            if (target == -1) {
+                return IDLE;
+            }
+            anticipateUntil = Long.MIN_VALUE;
+            return dispatch(READ, target);
+        }
+        anticipateUntil = Long.MIN_VALUE;
+        return super.next(head, now);
+    }
+
+    // Wake up for whichever comes first, the end of the window or a deadline
+    @Override
+    public long idleUntil() {
+        return Math.min(anticipateUntil, nextDeadline());
+    }
+}
+
+// Shortest access time first: serves the pending request the cost model
+// says can be finished soonest, rotation and transfer included. Cylinders
+// are visited outwards from the head, nearest first, and the search stops
+// on a side once the seek alone takes longer than the best access so far,
+// so only requests that could win are ever costed.
+class SatfPolicy implements DiskSchedulingPolicy {
+    private final CylinderQueue pending;
+    private final DiskCostModel model;
+    private final int maxCandidates;
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+
+    public SatfPolicy(int maxCylinder, DiskCostModel model) {
+        this(maxCylinder, model, 256);
+    }
+
+    // Costing stops after maxCandidates requests, so a deep queue degrades
+    // to the best of the nearest ones instead of a full scan per decision
+    public SatfPolicy(int maxCylinder, DiskCostModel model, int maxCandidates) {
+        if (maxCandidates < 1) {
+            throw new IllegalArgumentException("maxCandidates must be positive");
+        }
+        pending = new CylinderQueue(maxCylinder);
+        this.model = model;
+        this.maxCandidates = maxCandidates;
+    }
+
+    @Override
+    public String getName() {
+        return "SATF";
+    }
+
+    @Override
+    public void add(int request, int cylinder) {
+        add(request, cylinder, 0, 1, false, 0);
+    }
+
+    @Override
+    public void add(int request, int cylinder, int offset, int sectors, boolean write, long now) {
+        pending.add(request, cylinder);
+        if (request >= offsets.length) {
+            int length = Math.max(request + 1, 2 * offsets.length);
+            offsets = Arrays.copyOf(offsets, length);
+            lengths = Arrays.copyOf(lengths, length);
+        }
+        offsets[request] = offset;
+        lengths[request] = sectors;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    @Override
+    public int next(DiskHead head) {
+        return next(head, 0);
+    }
+
+    @Override
+    public int next(DiskHead head, long now) {
+        int position = head.getPosition();
+        int below = pending.floor(position);
+        int above = pending.ceiling(position + 1);
+        int best = -1;
+        long bestTime = Long.MAX_VALUE;
+        int costed = 0;
+        while ((below != -1 || above != -1) && costed < maxCandidates) {
+            // Take the nearer side; the farther one can wait for the next round
+            boolean up = below == -1 || (above != -1 && above - position < position - below);
+            int cylinder = up ? above : below;
+            long distance = Math.abs((long) cylinder - position);
+            if (model.seekTime(distance) >= bestTime) {
+                // Everything left on this side is at least as far
+                if (up) {
+                    above = -1;
+                } else {
+                    below = -1;
+                }
+                continue;
+            }
+            for (int request = pending.first(cylinder); request != -1 && costed < maxCandidates;
+                    request = pending.next(request)) {
+                costed++;
+                long time = model.accessTime(now, distance, offsets[request], lengths[request]);
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = request;
+                }
+            }
+            if (up) {
+                above = cylinder == head.getMaxCylinder() ? -1 : pending.ceiling(cylinder + 1);
+            } else {
+                below = cylinder == 0 ? -1 : pending.floor(cylinder - 1);
+            }
+        }
+        pending.remove(best);
+        return best;
+    }
+}
+
+// Binary min-heap of simulation events: a long timestamp plus an int event
+// code, kept in parallel primitive arrays. Equal times pop in code order.
+class EventQueue {
+    private long[] time;
+    private int[] code;
+    private int size;
+
+    public EventQueue(int capacity) {
+        time = new long[Math.max(capacity, 4)];
+        code = new int[time.length];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void push(long t, int c) {
+        if (size == time.length) {
+            time = Arrays.copyOf(time, 2 * size);
+            code = Arrays.copyOf(code, 2 * size);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (!before(t, c, time[parent], code[parent])) break;
+            time[i] = time[parent];
+            code[i] = code[parent];
+            i = parent;
+        }
+        time[i] = t;
+        code[i] = c;
+    }
+
+    public long peekTime() {
+        return time[0];
+    }
+
+    public int peekCode() {
+        return code[0];
+    }
+
+    // Removes the earliest event and returns its code
+    public int poll() {
+        int top = code[0];
+        size--;
+        long t = time[size];
+        int c = code[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(time[child + 1], code[child + 1], time[child], code[child])) {
+                child++;
+            }
+            if (!before(time[child], code[child], t, c)) break;
+            time[i] = time[child];
+            code[i] = code[child];
+            i = child;
+        }
+        time[i] = t;
+        code[i] = c;
+        return top;
+    }
+
+    private static boolean before(long t1, int c1, long t2, int c2) {
+        return t1 < t2 || (t1 == t2 && c1 < c2);
+    }
+}
+
+// Requests in arrival order, handed over in chunks of primitive arrays
+interface DiskRequestStream {
+    // Fills the arrays from index 0 and returns how many requests were read,
+    // or 0 once the stream is exhausted. offsets[i] is the first sector
+    // within the cylinder and writes[i] is false for reads.
+    int read(long[] arrivals, int[] cylinders, int[] offsets, int[] sectors, boolean[] writes) throws IOException;
+}
+
+// Logical block requests in arrival order, before an array maps them onto
+// its member disks
+interface BlockRequestStream extends Closeable {
+    // Fills the arrays from index 0 and returns how many requests were read,
+    // or 0 once the stream is exhausted
+    int readBlocks(long[] arrivals, long[] lbas, int[] sectors, boolean[] writes) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    // Single-sector requests taken from arrays in any arrival order; writes may be null
+    static BlockRequestStream of(long[] arrivals, long[] lbas, boolean[] writes) {
+        int[] byArrival = DiskScheduler.arrivalOrder(arrivals);
+        return new BlockRequestStream() {
+            private int next;
+
+            @Override
+            public int readBlocks(long[] chunkArrivals, long[] chunkLbas, int[] chunkSectors, boolean[] chunkWrites) {
+                int count = Math.min(chunkArrivals.length, arrivals.length - next);
+                for (int i = 0; i < count; i++, next++) {
+                    int request = byArrival == null ? next : byArrival[next];
+                    chunkArrivals[i] = arrivals[request];
+                    chunkLbas[i] = lbas[request];
+                    chunkSectors[i] = 1;
+                    chunkWrites[i] = writes != null && writes[request];
+                }
+                return count;
+            }
+        };
+    }
+}
+
+// Told about every request as the simulated disk finishes it. Requests are
+// numbered in arrival order; dispatch is when the policy picked it, and
+// seekDistance includes any edge or return travel made on the way.
+interface DiskServiceListener {
+    void served(long request, long arrival, long dispatch, long completion, int cylinder, long seekDistance,
+                boolean write);
+}
+
+// Time the disk takes to serve a request, in the simulation's time units.
+// seekTime must never exceed accessTime for the same distance, and must
+// grow with the distance; SATF relies on both to prune its search.
+interface DiskCostModel {
+    // Time to move the head over the given number of cylinders
+    long seekTime(long distance);
+
+    // Time from starting the seek at 'start' until the last sector has been
+    // transferred. offset is the first sector's position within the cylinder.
+    long accessTime(long start, long distance, int offset, int sectors);
+
+    // Simulation time units per second, so policies can scale real-time limits
+    double unitsPerSecond();
+}
+
+// The simple model: distance / seekRate plus a fixed time per request
+class LinearCostModel implements DiskCostModel {
+    private final double seekRate;
+    private final long serviceTime;
+
+    // seekRate is in cylinders per time unit, serviceTime in time units
+    public LinearCostModel(double seekRate, long serviceTime) {
+        if (!(seekRate > 0) || serviceTime < 0) {
+            throw new IllegalArgumentException("Seek rate must be positive and service time non-negative");
+        }
+        this.seekRate = seekRate;
+        this.serviceTime = serviceTime;
+    }
+
+    @Override
+    public long seekTime(long distance) {
+        return (long) Math.ceil(distance / seekRate);
+    }
+
+    @Override
+    public long accessTime(long start, long distance, int offset, int sectors) {
+        return seekTime(distance) + serviceTime;
+    }
+
+    // The GUI and reports label linear-model time in milliseconds
+    @Override
+    public double unitsPerSecond() {
+        return 1000;
+    }
+}
+
+// Mechanical drive model after Ruemmler and Wilkes: short seeks are
+// dominated by acceleration and grow with the square root of the distance,
+// long ones coast and grow linearly. The curve passes through the
+// track-to-track time at one cylinder, the average seek time at a third of
+// the stroke and the full-stroke time at the last cylinder. The platter
+// spins continuously from time 0, so after the seek the head waits for the
+// request's first sector to come round, then reads sectors at
+// sectorsPerTrack per revolution.
+class DriveCostModel implements DiskCostModel {
+    private final int maxCylinder;
+    private final double trackToTrack;
+    private final double averageSeek;
+    private final double fullStroke;
+    private final long boundary;
+    private final double rotation;
+    private final int sectorsPerTrack;
+    private final double unitsPerSecond;
+
+    // A 7200 RPM drive with 0.5/8.5/16 ms seeks
+    public DriveCostModel(int maxCylinder, int sectorsPerTrack, double unitsPerSecond) {
+        this(maxCylinder, 0.5, 8.5, 16, 7200, sectorsPerTrack, unitsPerSecond);
+    }
+
+    // Seek times are in milliseconds; unitsPerSecond converts to simulation time
+    public DriveCostModel(int maxCylinder, double trackToTrackMs, double averageSeekMs, double fullStrokeMs,
+                          double rpm, int sectorsPerTrack, double unitsPerSecond) {
+        if (!(trackToTrackMs > 0 && averageSeekMs >= trackToTrackMs && fullStrokeMs >= averageSeekMs)) {
+            throw new IllegalArgumentException("Expected 0 < track-to-track <= average <= full-stroke seek time");
+        }
+        if (!(rpm > 0) || sectorsPerTrack < 1 || !(unitsPerSecond > 0)) {
+            throw new IllegalArgumentException("RPM, sectors per track and time units must be positive");
+        }
+        this.maxCylinder = Math.max(maxCylinder, 1);
+        this.trackToTrack = trackToTrackMs / 1000;
+        this.averageSeek = averageSeekMs / 1000;
+        this.fullStroke = fullStrokeMs / 1000;
+        this.boundary = Math.max(this.maxCylinder / 3, 1);
+        this.rotation = 60 / rpm;
+        this.sectorsPerTrack = sectorsPerTrack;
+        this.unitsPerSecond = unitsPerSecond;
+    }
+
+    // Seek time in seconds
+    private double seekSeconds(long distance) {
+        if (distance == 0) {
+            return 0;
+        }
+        if (distance <= boundary) {
+            double shape = boundary == 1 ? 0 : Math.sqrt((distance - 1) / (double) (boundary - 1));
+            return trackToTrack + (averageSeek - trackToTrack) * shape;
+        }
+        double shape = maxCylinder == boundary ? 1 : (distance - boundary) / (double) (maxCylinder - boundary);
+        return averageSeek + (fullStroke - averageSeek) * Math.min(shape, 1);
+    }
+
+    @Override
+    public long seekTime(long distance) {
+        return (long) Math.ceil(seekSeconds(distance) * unitsPerSecond);
+    }
+
+    @Override
+    public long accessTime(long start, long distance, int offset, int sectors) {
+        double seek = seekSeconds(distance);
+        // Revolutions since time 0 when the seek ends, and the part of a
+        // revolution until the first sector passes under the head
+        double turns = (start / unitsPerSecond + seek) / rotation;
+        double wait = (double) (offset % sectorsPerTrack) / sectorsPerTrack - (turns - Math.floor(turns));
+        if (wait < 0) {
+            wait += 1;
+        }
+        double transfer = (double) Math.max(sectors, 1) / sectorsPerTrack;
+        return (long) Math.ceil((seek + (wait + transfer) * rotation) * unitsPerSecond);
+    }
+
+    @Override
+    public double unitsPerSecond() {
+        return unitsPerSecond;
+    }
+}
+
+// Discrete-event simulation of one disk. Requests become pending at their
+// arrival time; whenever the head is idle the policy picks from what is
+// pending, and the cost model says how long the head takes to serve it.
+// Requests are pulled from a DiskRequestStream as the clock reaches them,
+// so only the pending ones are held in memory: policies see them by slot
+// numbers that are recycled once a request completes. A policy may also
+// leave the head idle until a wake-up time of its choosing.
+class DiskScheduler {
+    private static final int CHUNK_SIZE = 4096;
+    // Event codes; at the same instant arrivals are handled before the
+    // completion, so they are pending before the next decision
+    private static final int ARRIVAL = 0;
+    private static final int COMPLETION = 1;
+    private static final int WAKEUP = 2;
+
+    private final int maxCylinder;
+    private final DiskCostModel model;
+
+    public DiskScheduler(int maxCylinder) {
+        this(maxCylinder, 1, 0);
+    }
+
+    // seekRate is in cylinders per time unit, serviceTime in time units
+    public DiskScheduler(int maxCylinder, double seekRate, long serviceTime) {
+        this(maxCylinder, new LinearCostModel(seekRate, serviceTime));
+    }
+
+    public DiskScheduler(int maxCylinder, DiskCostModel model) {
+        this.maxCylinder = maxCylinder;
+        this.model = model;
+    }
+
+    public int getMaxCylinder() {
+        return maxCylinder;
+    }
+
+    public DiskCostModel getCostModel() {
+        return model;
+    }
+
+    // The named policy for this disk, costing requests with its model
+    public DiskSchedulingPolicy newPolicy(String name) {
+        return DiskSchedulingPolicy.forName(name, maxCylinder, model);
+    }
+
+    // Static batch: every request is pending at time 0
+    public DiskSchedule run(DiskSchedulingPolicy policy, int[] cylinders, int initialPosition, boolean movingUp) {
+        return simulate(policy, new long[cylinders.length], cylinders, initialPosition, movingUp);
+    }
+
+    public DiskSchedule simulate(DiskSchedulingPolicy policy, long[] arrivals, int[] cylinders,
+                                 int initialPosition, boolean movingUp) {
+        return simulate(policy, arrivals, cylinders, null, initialPosition, movingUp);
+    }
+
+    // writes may be null when every request is a read
+    public DiskSchedule simulate(DiskSchedulingPolicy policy, long[] arrivals, int[] cylinders, boolean[] writes,
+                                 int initialPosition, boolean movingUp) {
+        int n = cylinders.length;
+        if (arrivals.length != n || (writes != null && writes.length != n)) {
+            throw new IllegalArgumentException("Expected one arrival time and type per request");
+        }
+        // Arrival order, ties by index; the identity unless arrivals are unsorted
+        int[] byArrival = arrivalOrder(arrivals);
+        long[] dispatches = new long[n];
+        long[] completions = new long[n];
+        int[] order = new int[n];
+        int[] served = {0};
+        DiskHead head = new DiskHead(maxCylinder, initialPosition, movingUp);
+        DiskServiceStats stats = new DiskServiceStats(policy.getName());
+
+        DiskRequestStream stream = new DiskRequestStream() {
+            private int next;
+
+            @Override
+            public int read(long[] chunkArrivals, int[] chunkCylinders, int[] chunkOffsets, int[] chunkSectors,
+                            boolean[] chunkWrites) {
+                int count = Math.min(chunkArrivals.length, n - next);
+                for (int i = 0; i < count; i++, next++) {
+                    int request = byArrival == null ? next : byArrival[next];
+                    chunkArrivals[i] = arrivals[request];
+                    chunkCylinders[i] = cylinders[request];
+                    chunkOffsets[i] = 0;
+                    chunkSectors[i] = 1;
+                    chunkWrites[i] = writes != null && writes[request];
+                }
+                return count;
+            }
+        };
+        long endTime;
+        try {
+            endTime = replay(policy, stream, head, (request, arrival, dispatch, completion, cylinder, distance, write) -> {
+                int index = byArrival == null ? (int) request : byArrival[(int) request];
+                dispatches[index] = dispatch;
+                completions[index] = completion;
+                order[served[0]++] = index;
+                stats.served(index, arrival, dispatch, completion, cylinder, distance, write);
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new DiskSchedule(head, order, arrivals, dispatches, completions, endTime, stats);
+    }
+
+    // Streams a trace through the policy without keeping per-request state
+    public DiskReplaySummary replay(DiskSchedulingPolicy policy, DiskRequestStream stream,
+                                    int initialPosition, boolean movingUp) throws IOException {
+        return replay(policy, stream, initialPosition, movingUp, false);
+    }
+
+    // As above, optionally keeping the head path (4 bytes per move) for display
+    public DiskReplaySummary replay(DiskSchedulingPolicy policy, DiskRequestStream stream,
+                                    int initialPosition, boolean movingUp, boolean recordPath) throws IOException {
+        DiskHead head = new DiskHead(maxCylinder, initialPosition, movingUp, recordPath);
+        DiskReplaySummary summary = new DiskReplaySummary(policy.getName());
+        long endTime = replay(policy, stream, head, summary.getStats());
+        summary.finish(head, endTime);
+        return summary;
+    }
+
+    // Runs the event loop and returns the time the last request completed
+    private long replay(DiskSchedulingPolicy policy, DiskRequestStream stream, DiskHead head,
+                        DiskServiceListener listener) throws IOException {
+        long[] chunkArrivals = new long[CHUNK_SIZE];
+        int[] chunkCylinders = new int[CHUNK_SIZE];
+        int[] chunkOffsets = new int[CHUNK_SIZE];
+        int[] chunkSectors = new int[CHUNK_SIZE];
+        boolean[] chunkWrites = new boolean[CHUNK_SIZE];
+        int chunkSize = stream.read(chunkArrivals, chunkCylinders, chunkOffsets, chunkSectors, chunkWrites);
+        int chunkPos = 0;
+        long sequence = 0;
+
+        // Pending requests by slot, with a stack of free slots
+        long[] slotRequest = new long[16];
+        long[] slotArrival = new long[16];
+        int[] slotCylinder = new int[16];
+        int[] slotOffset = new int[16];
+        int[] slotSectors = new int[16];
+        boolean[] slotWrite = new boolean[16];
+        int[] freeSlots = new int[16];
+        int freeCount = 0;
+        int slotCount = 0;
+
+        EventQueue events = new EventQueue(4);
+        if (chunkSize > 0) {
+            events.push(chunkArrivals[0], ARRIVAL);
+        }
+
+        int inService = -1;
+        long inServiceStart = 0;
+        long inServiceDistance = 0;
+        long wakeup = Long.MIN_VALUE;
+        long now = 0;
+        long end = 0;
+        while (!events.isEmpty()) {
+            now = events.peekTime();
+            int event = events.poll();
+            if (event == COMPLETION) {
+                listener.served(slotRequest[inService], slotArrival[inService], inServiceStart, now,
+                                slotCylinder[inService], inServiceDistance, slotWrite[inService]);
+                freeSlots[freeCount++] = inService;
+                inService = -1;
+                end = now;
+                policy.completed(now);
+            } else if (event == ARRIVAL) {
+                int slot;
+                if (freeCount > 0) {
+                    slot = freeSlots[--freeCount];
+                } else {
+                    slot = slotCount++;
+                    if (slot == slotRequest.length) {
+                        slotRequest = Arrays.copyOf(slotRequest, 2 * slot);
+                        slotArrival = Arrays.copyOf(slotArrival, 2 * slot);
+                        slotCylinder = Arrays.copyOf(slotCylinder, 2 * slot);
+                        slotOffset = Arrays.copyOf(slotOffset, 2 * slot);
+                        slotSectors = Arrays.copyOf(slotSectors, 2 * slot);
+                        slotWrite = Arrays.copyOf(slotWrite, 2 * slot);
+                        freeSlots = Arrays.copyOf(freeSlots, 2 * slot);
+                    }
+                }
+                slotRequest[slot] = sequence++;
+                slotArrival[slot] = now;
+                slotCylinder[slot] = chunkCylinders[chunkPos];
+                slotOffset[slot] = chunkOffsets[chunkPos];
+                slotSectors[slot] = chunkSectors[chunkPos];
+                slotWrite[slot] = chunkWrites[chunkPos];
+                policy.add(slot, slotCylinder[slot], slotOffset[slot], slotSectors[slot], slotWrite[slot], now);
+
+                if (++chunkPos == chunkSize) {
+                    chunkSize = stream.read(chunkArrivals, chunkCylinders, chunkOffsets, chunkSectors, chunkWrites);
+                    chunkPos = 0;
+                }
+                if (chunkPos < chunkSize) {
+                    if (chunkArrivals[chunkPos] < now) {
+                        throw new IllegalArgumentException("Request " + sequence + " arrives at "
+                            + chunkArrivals[chunkPos] + ", before the previous one at " + now);
+                    }
+                    events.push(chunkArrivals[chunkPos], ARRIVAL);
+                }
+            }
+
+            boolean moreNow = !events.isEmpty() && events.peekTime() == now && events.peekCode() == ARRIVAL;
+            if (inService == -1 && !moreNow && !policy.isEmpty()) {
+                long before = head.getMovement();
+                int slot = policy.next(head, now);
+                if (slot == DiskSchedulingPolicy.IDLE) {
+                    long until = policy.idleUntil();
+                    if (until <= now || until == Long.MAX_VALUE) {
+                        throw new IllegalStateException(policy.getName() + " idled until " + until + " at " + now);
+                    }
+                    // One wake-up per idle period; earlier ones that fire late are harmless
+                    if (until != wakeup && until != Long.MAX_VALUE) {
+                        events.push(until, WAKEUP);
+                        wakeup = until;
+                    }
+                } else {
+                    inService = slot;
+                    head.moveTo(slotCylinder[inService]);
+                    inServiceStart = now;
+                    inServiceDistance = head.getMovement() - before;
+                    events.push(now + model.accessTime(now, inServiceDistance, slotOffset[inService],
+                                                       slotSectors[inService]), COMPLETION);
+                }
+            }
+        }
+        if (sequence > 0) {
+            policy.drained(head);
+        }
+        return end;
+    }
+
+    // Stable order of the requests by arrival, or null if already sorted
+    static int[] arrivalOrder(long[] arrivals) {
+        boolean inOrder = true;
+        for (int i = 1; i < arrivals.length && inOrder; i++) {
+            inOrder = arrivals[i] >= arrivals[i - 1];
+        }
+        if (inOrder) {
+            return null;
+        }
+        EventQueue heap = new EventQueue(arrivals.length);
+        for (int i = 0; i < arrivals.length; i++) {
+            heap.push(arrivals[i], i);
+        }
+        int[] order = new int[arrivals.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = heap.poll();
+        }
+        return order;
+    }
+}
+
+// Histogram of non-negative longs in a fixed 15 KiB: values below 32 are
+// counted exactly, larger ones in 32 sub-buckets per power of two, so any
+// reported percentile is within about 3% of the true value.
+class LogHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB];
+    private long count;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    // Upper bound of the bucket holding the nearest-rank percentile p, in (0, 100]
+    public long percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(high(i), max);
+            }
+        }
+        return max;
+    }
+
+    // Non-empty buckets as {low, high, count} triples
+    public long[][] buckets() {
+        ArrayList<long[]> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                buckets.add(new long[]{low(i), high(i), counts[i]});
+            }
+        }
+        return buckets.toArray(new long[0][]);
+    }
+
+    private static int index(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB + (int) ((value >>> shift) & (SUB - 1));
+    }
+
+    private static long low(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int shift = index / SUB - 1;
+        return (long) (SUB | (index % SUB)) << shift;
+    }
+
+    private static long high(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int shift = index / SUB - 1;
+        return low(index) + (1L << shift) - 1;
+    }
+}
+
+// Per-request service statistics of one policy run, in constant memory:
+// wait (arrival to dispatch), response and seek distance histograms, plus
+// the request that starved longest and the span used for throughput.
+class DiskServiceStats implements DiskServiceListener {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final String policyName;
+    private final LogHistogram waits = new LogHistogram();
+    private final LogHistogram responses = new LogHistogram();
+    private final LogHistogram seeks = new LogHistogram();
+    private final LogHistogram readWaits = new LogHistogram();
+    private final LogHistogram writeWaits = new LogHistogram();
+    private long totalWait;
+    private long totalResponse;
+    private long busyTime;
+    private long maxWait = -1;
+    private long starvedRequest = -1;
+    private long firstArrival = Long.MAX_VALUE;
+    private long lastCompletion = Long.MIN_VALUE;
+
+    public DiskServiceStats(String policyName) {
+        this.policyName = policyName;
+    }
+
+    @Override
+    public void served(long request, long arrival, long dispatch, long completion, int cylinder, long seekDistance,
+                       boolean write) {
+        long wait = dispatch - arrival;
+        waits.record(wait);
+        (write ? writeWaits : readWaits).record(wait);
+        responses.record(completion - arrival);
+        seeks.record(seekDistance);
+        totalWait += wait;
+        totalResponse += completion - arrival;
+        busyTime += completion - dispatch;
+        if (wait > maxWait) {
+            maxWait = wait;
+            starvedRequest = request;
+        }
+        firstArrival = Math.min(firstArrival, arrival);
+        lastCompletion = Math.max(lastCompletion, completion);
+    }
+
+    public String getPolicyName() {
+        return policyName;
+    }
+
+    public long getRequestCount() {
+        return waits.getCount();
+    }
+
+    public LogHistogram getWaits() {
+        return waits;
+    }
+
+    public LogHistogram getResponses() {
+        return responses;
+    }
+
+    public LogHistogram getSeekDistances() {
+        return seeks;
+    }
+
+    public LogHistogram getReadWaits() {
+        return readWaits;
+    }
+
+    public LogHistogram getWriteWaits() {
+        return writeWaits;
+    }
+
+    public double getAverageWait() {
+        return getRequestCount() == 0 ? 0 : (double) totalWait / getRequestCount();
+    }
+
+    public double getAverageResponse() {
+        return getRequestCount() == 0 ? 0 : (double) totalResponse / getRequestCount();
+    }
+
+    public long getMaxWait() {
+        return Math.max(maxWait, 0);
+    }
+
+    // Arrival index of the request that waited longest, or -1 if none
+    public long getStarvedRequest() {
+        return starvedRequest;
+    }
+
+    // Time the disk spent seeking and serving
+    public long getBusyTime() {
+        return busyTime;
+    }
+
+    public long getFirstArrival() {
+        return firstArrival;
+    }
+
+    public long getLastCompletion() {
+        return lastCompletion;
+    }
+
+    // Requests completed per time unit, from the first arrival to the last completion
+    public double getThroughput() {
+        long span = lastCompletion - firstArrival;
+        return getRequestCount() == 0 ? 0 : getRequestCount() / (double) Math.max(span, 1);
+    }
+
+    // Multi-line report; timeUnit names the simulation's time unit
+    public String format(String timeUnit) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "Throughput: %.4f requests/%s%n", getThroughput(), timeUnit));
+        out.append(String.format(Locale.ROOT, "Wait (%s): avg %.2f", timeUnit, getAverageWait()));
+        appendPercentiles(out, waits);
+        if (writeWaits.getCount() > 0) {
+            out.append("Read wait (").append(readWaits.getCount()).append(')');
+            appendPercentiles(out, readWaits);
+            out.append("Write wait (").append(writeWaits.getCount()).append(')');
+            appendPercentiles(out, writeWaits);
+        }
+        out.append("Seek distance (cylinders)");
+        appendPercentiles(out, seeks);
+        out.append("Longest starved: request ").append(starvedRequest)
+           .append(" waited ").append(getMaxWait()).append(' ').append(timeUnit).append('\n');
+        return out.toString();
+    }
+
+    private static void appendPercentiles(StringBuilder out, LogHistogram histogram) {
+        for (double p : PERCENTILES) {
+            out.append(String.format(Locale.ROOT, ", p%s %d", label(p), histogram.percentile(p)));
+        }
+        out.append(", max ").append(histogram.getMax()).append('\n');
+    }
+
+    private static String label(double p) {
+        return p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p);
+    }
+
+    public static String toCsv(java.util.List<DiskServiceStats> stats) {
+        StringBuilder out = new StringBuilder("policy,requests,throughput,wait_avg");
+        for (double p : PERCENTILES) out.append(",wait_p").append(label(p));
+        out.append(",wait_max,response_avg");
+        for (double p : PERCENTILES) out.append(",response_p").append(label(p));
+        for (double p : PERCENTILES) out.append(",seek_p").append(label(p));
+        out.append(",seek_max,starved_request,writes,read_wait_p99,write_wait_p99\n");
+        for (DiskServiceStats s : stats) {
+            out.append(s.policyName).append(',').append(s.getRequestCount())
+               .append(String.format(Locale.ROOT, ",%.6f,%.3f", s.getThroughput(), s.getAverageWait()));
+            for (double p : PERCENTILES) out.append(',').append(s.waits.percentile(p));
+            out.append(',').append(s.getMaxWait())
+               .append(String.format(Locale.ROOT, ",%.3f", s.getAverageResponse()));
+            for (double p : PERCENTILES) out.append(',').append(s.responses.percentile(p));
+            for (double p : PERCENTILES) out.append(',').append(s.seeks.percentile(p));
+            out.append(',').append(s.seeks.getMax()).append(',').append(s.starvedRequest)
+               .append(',').append(s.writeWaits.getCount()).append(',').append(s.readWaits.percentile(99))
+               .append(',').append(s.writeWaits.percentile(99)).append('\n');
+        }
+        return out.toString();
+    }
+
+    public static String toJson(java.util.List<DiskServiceStats> stats) {
+        StringBuilder out = new StringBuilder("[");
+        for (int i = 0; i < stats.size(); i++) {
+            DiskServiceStats s = stats.get(i);
+            if (i > 0) out.append(',');
+            out.append("{\"policy\":\"").append(s.policyName).append('"')
+               .append(",\"requests\":").append(s.getRequestCount())
+               .append(String.format(Locale.ROOT, ",\"throughput\":%.6f", s.getThroughput()))
+               .append(",\"starvedRequest\":").append(s.starvedRequest)
+               .append(",\"wait\":");
+            appendJson(out, s.waits, s.getAverageWait());
+            out.append(",\"response\":");
+            appendJson(out, s.responses, s.getAverageResponse());
+            out.append(",\"seek\":");
+            appendJson(out, s.seeks, -1);
+            out.append(",\"writes\":").append(s.writeWaits.getCount()).append(",\"readWait\":");
+            appendJson(out, s.readWaits, -1);
+            out.append(",\"writeWait\":");
+            appendJson(out, s.writeWaits, -1);
+            out.append('}');
+        }
+        return out.append(']').toString();
+    }
+
+    private static void appendJson(StringBuilder out, LogHistogram histogram, double average) {
+        out.append('{');
+        if (average >= 0) {
+            out.append(String.format(Locale.ROOT, "\"avg\":%.3f,", average));
+        }
+        for (double p : PERCENTILES) {
+            out.append("\"p").append(label(p)).append("\":").append(histogram.percentile(p)).append(',');
+        }
+        out.append("\"max\":").append(histogram.getMax()).append(",\"buckets\":[");
+        long[][] buckets = histogram.buckets();
+        for (int i = 0; i < buckets.length; i++) {
+            if (i > 0) out.append(',');
+            out.append('[').append(buckets[i][0]).append(',').append(buckets[i][1])
+               .append(',').append(buckets[i][2]).append(']');
+        }
+        out.append("]}");
+    }
+}
+
+// Aggregate outcome of a streamed replay; per-request data is not kept and
+// the head path only if the replay asked for it
+class DiskReplaySummary {
+    private final DiskServiceStats stats;
+    private long totalMovement;
+    private long returnMovement;
+    private long endTime;
+    private int[] path;
+    private BitSet returnSteps;
+
+    DiskReplaySummary(String policyName) {
+        this.stats = new DiskServiceStats(policyName);
+    }
+
+    void finish(DiskHead head, long endTime) {
+        this.totalMovement = head.getMovement();
+        this.returnMovement = head.getReturnMovement();
+        this.endTime = endTime;
+        if (head.isRecordingPath()) {
+            this.path = head.getPath();
+            this.returnSteps = head.getReturnSteps();
+        }
+    }
+
+    // Head positions in visiting order, or null if the path was not recorded
+    public int[] getPath() {
+        return path;
+    }
+
+    public BitSet getReturnSteps() {
+        return returnSteps == null ? new BitSet() : (BitSet) returnSteps.clone();
+    }
+
+    public String getPolicyName() {
+        return stats.getPolicyName();
+    }
+
+    public DiskServiceStats getStats() {
+        return stats;
+    }
+
+    public long getRequestCount() {
+        return stats.getRequestCount();
+    }
+
+    public long getTotalMovement() {
+        return totalMovement;
+    }
+
+    public long getReturnMovement() {
+        return returnMovement;
+    }
+
+    public double getAverageWaitTime() {
+        return stats.getAverageWait();
+    }
+
+    public long getMaxWaitTime() {
+        return stats.getMaxWait();
+    }
+
+    public double getAverageResponseTime() {
+        return stats.getAverageResponse();
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "%s: %d requests, movement %d (return %d), avg wait %.2f, p99 wait %d, max wait %d (request %d), "
+                + "avg response %.2f, end %d",
+            getPolicyName(), getRequestCount(), totalMovement, returnMovement, getAverageWaitTime(),
+            stats.getWaits().percentile(99), getMaxWaitTime(), stats.getStarvedRequest(),
+            getAverageResponseTime(), endTime);
+    }
+}
+
+// Runs every policy on the same workload at once, one task per policy on a
+// fixed pool. The input arrays are only read, so all tasks share them.
+class DiskPolicyComparison {
+    private final ExecutorService pool;
+
+    public DiskPolicyComparison(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    // Daemon pool with a worker for every policy
+    static ExecutorService newPool() {
+        return Executors.newFixedThreadPool(DiskSchedulingPolicy.NAMES.length, task -> {
+            Thread thread = new Thread(task, "disk-policy-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Schedules in DiskSchedulingPolicy.NAMES order
+    public DiskSchedule[] compare(DiskScheduler scheduler, long[] arrivals, int[] cylinders,
+                                  int initialPosition, boolean movingUp)
+            throws InterruptedException, ExecutionException {
+        return compare(scheduler, arrivals, cylinders, null, initialPosition, movingUp);
+    }
+
+    public DiskSchedule[] compare(DiskScheduler scheduler, long[] arrivals, int[] cylinders, boolean[] writes,
+                                  int initialPosition, boolean movingUp)
+            throws InterruptedException, ExecutionException {
+        String[] names = DiskSchedulingPolicy.NAMES;
+        ArrayList<Future<DiskSchedule>> futures = new ArrayList<>();
+        for (String name : names) {
+            futures.add(pool.submit(() -> scheduler.simulate(
+                scheduler.newPolicy(name),
+                arrivals, cylinders, writes, initialPosition, movingUp)));
+        }
+        DiskSchedule[] schedules = new DiskSchedule[names.length];
+        for (int i = 0; i < names.length; i++) {
+            schedules[i] = futures.get(i).get();
+        }
+        return schedules;
+    }
+
+    public static String formatTable(DiskSchedule[] schedules) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-12s %12s %12s %10s %10s %15s %12s%n",
+            "Policy", "Movement", "Return", "Avg Wait", "p99 Wait", "Max Starvation", "Throughput"));
+        for (DiskSchedule s : schedules) {
+            out.append(String.format(Locale.ROOT, "%-12s %12d %12d %10.2f %10d %15d %12.4f%n",
+                s.getPolicyName(), s.getTotalMovement(), s.getReturnMovement(),
+                s.getAverageWaitTime(), s.getStats().getWaits().percentile(99), s.getMaxWaitTime(),
+                s.getStats().getThroughput()));
+        }
+        return out.toString();
+    }
+}
+
+// Striped array of identical member disks. Logical requests are split at
+// stripe unit boundaries and each unit is mapped onto the members:
+//   RAID-0  unit u lives on disk u % N
+//   RAID-1  every disk holds everything; reads go to one mirror, taking
+//           turns per request, writes go to all of them
+//   RAID-5  each row holds N - 1 data units and a parity unit whose disk
+//           rotates from row to row (left-symmetric). A write reads and
+//           rewrites both its data unit and the parity unit.
+// Every member replays its share of the requests on its own thread, each
+// pulling the logical stream itself, so nothing is collected up front. The
+// reads and writes of a RAID-5 update arrive together; their ordering is
+// not modelled.
+class DiskArray {
+    private final int level;
+    private final int disks;
+    private final long stripe;
+    private final long sectorsPerCylinder;
+    private final DiskScheduler member;
+
+    // stripe is the unit size in sectors; member describes one disk
+    public DiskArray(int level, int disks, long stripe, long sectorsPerCylinder, DiskScheduler member) {
+        if (level != 0 && level != 1 && level != 5) {
+            throw new IllegalArgumentException("Unsupported RAID level " + level + ", expected 0, 1 or 5");
+        }
+        int minDisks = level == 0 ? 1 : level == 1 ? 2 : 3;
+        if (disks < minDisks) {
+            throw new IllegalArgumentException("RAID-" + level + " needs at least " + minDisks + " disks");
+        }
+        if (stripe < 1 || sectorsPerCylinder < 1) {
+            throw new IllegalArgumentException("Stripe and sectors per cylinder must be positive");
+        }
+        this.level = level;
+        this.disks = disks;
+        this.stripe = stripe;
+        this.sectorsPerCylinder = sectorsPerCylinder;
+        this.member = member;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getDisks() {
+        return disks;
+    }
+
+    // Sectors each member needs to hold the logical sectors 0..logicalSectors-1
+    public static long memberSectors(int level, int disks, long stripe, long logicalSectors) {
+        if (level == 1) {
+            return logicalSectors;
+        }
+        long units = (logicalSectors + stripe - 1) / stripe;
+        int dataDisks = level == 5 ? disks - 1 : disks;
+        return (units + dataDisks - 1) / dataDisks * stripe;
+    }
+
+    // Replays the requests on every member at once. source opens a fresh
+    // pass over the logical requests and is called once per member disk.
+    public DiskArrayReport run(String policyName, Callable<BlockRequestStream> source,
+                               int initialPosition, boolean movingUp, boolean recordPath)
+            throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(disks, task -> {
+            Thread thread = new Thread(task, "disk-array-member");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ArrayList<Future<DiskReplaySummary>> futures = new ArrayList<>();
+            MemberStream[] streams = new MemberStream[disks];
+            for (int d = 0; d < disks; d++) {
+                int disk = d;
+                futures.add(pool.submit(() -> {
+                    try (BlockRequestStream logical = source.call()) {
+                        streams[disk] = new MemberStream(logical, disk);
+                        return member.replay(member.newPolicy(policyName), streams[disk],
+                                             initialPosition, movingUp, recordPath);
+                    }
+                }));
+            }
+            DiskReplaySummary[] summaries = new DiskReplaySummary[disks];
+            for (int d = 0; d < disks; d++) {
+                summaries[d] = futures.get(d).get();
+            }
+            // Future.get makes the streams' counts visible here
+            return new DiskArrayReport(level, policyName, streams[0].logicalRequests, summaries);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // One member's share of the logical requests, expanded a chunk at a time
+    private final class MemberStream implements DiskRequestStream {
+        private static final int CHUNK_SIZE = 4096;
+
+        private final BlockRequestStream logical;
+        private final int disk;
+        private final long[] inArrivals = new long[CHUNK_SIZE];
+        private final long[] inLbas = new long[CHUNK_SIZE];
+        private final int[] inSectors = new int[CHUNK_SIZE];
+        private final boolean[] inWrites = new boolean[CHUNK_SIZE];
+        private long[] outArrivals = new long[CHUNK_SIZE];
+        private int[] outCylinders = new int[CHUNK_SIZE];
+        private int[] outOffsets = new int[CHUNK_SIZE];
+        private int[] outSectors = new int[CHUNK_SIZE];
+        private boolean[] outWrites = new boolean[CHUNK_SIZE];
+        private int outPos;
+        private int outSize;
+        private long logicalRequests;
+
+        MemberStream(BlockRequestStream logical, int disk) {
+            this.logical = logical;
+            this.disk = disk;
+        }
+
+        @Override
+        public int read(long[] arrivals, int[] cylinders, int[] offsets, int[] sectors, boolean[] writes)
+                throws IOException {
+            while (outPos == outSize) {
+                int count = logical.readBlocks(inArrivals, inLbas, inSectors, inWrites);
+                if (count == 0) {
+                    return 0;
+                }
+                outPos = 0;
+                outSize = 0;
+                for (int i = 0; i < count; i++) {
+                    expand(inArrivals[i], inLbas[i], inSectors[i], inWrites[i], logicalRequests++);
+                }
+            }
+            int count = Math.min(arrivals.length, outSize - outPos);
+            System.arraycopy(outArrivals, outPos, arrivals, 0, count);
+            System.arraycopy(outCylinders, outPos, cylinders, 0, count);
+            System.arraycopy(outOffsets, outPos, offsets, 0, count);
+            System.arraycopy(outSectors, outPos, sectors, 0, count);
+            System.arraycopy(outWrites, outPos, writes, 0, count);
+            outPos += count;
+            return count;
+        }
+
+        private void expand(long arrival, long lba, int sectors, boolean write, long request) throws IOException {
+            long end = lba + Math.max(sectors, 1);
+            for (long position = lba; position < end; ) {
+                long unit = position / stripe;
+                long offset = position % stripe;
+                int length = (int) Math.min(stripe - offset, end - position);
+                if (level == 0) {
+                    if (unit % disks == disk) {
+                        emit(arrival, unit / disks * stripe + offset, length, write);
+                    }
+                } else if (level == 1) {
+                    if (write || request % disks == disk) {
+                        emit(arrival, position, length, write);
+                    }
+                } else {
+                    long row = unit / (disks - 1);
+                    int parity = disks - 1 - (int) (row % disks);
+                    int data = (int) ((parity + 1 + unit % (disks - 1)) % disks);
+                    long memberLba = row * stripe + offset;
+                    if (data == disk || (write && parity == disk)) {
+                        if (write) {
+                            emit(arrival, memberLba, length, false);
+                        }
+                        emit(arrival, memberLba, length, write);
+                    }
+                }
+                position += length;
+            }
+        }
+
+        private void emit(long arrival, long memberLba, int sectors, boolean write) throws IOException {
+            long cylinder = memberLba / sectorsPerCylinder;
+            if (cylinder > member.getMaxCylinder()) {
+                throw new IOException("Member LBA " + memberLba + " maps past cylinder " + member.getMaxCylinder());
+            }
+            if (outSize == outArrivals.length) {
+                outArrivals = Arrays.copyOf(outArrivals, 2 * outSize);
+                outCylinders = Arrays.copyOf(outCylinders, 2 * outSize);
+                outOffsets = Arrays.copyOf(outOffsets, 2 * outSize);
+                outSectors = Arrays.copyOf(outSectors, 2 * outSize);
+                outWrites = Arrays.copyOf(outWrites, 2 * outSize);
+            }
+            outArrivals[outSize] = arrival;
+            outCylinders[outSize] = (int) cylinder;
+            outOffsets[outSize] = (int) (memberLba % sectorsPerCylinder);
+            outSectors[outSize] = sectors;
+            outWrites[outSize] = write;
+            outSize++;
+        }
+    }
+}
+
+// Outcome of an array replay: the members' own summaries plus figures for
+// the array as a whole over the span from the first arrival to the last
+// completion on any member
+class DiskArrayReport {
+    private final int level;
+    private final String policyName;
+    private final long logicalRequests;
+    private final DiskReplaySummary[] members;
+    private final long span;
+
+    DiskArrayReport(int level, String policyName, long logicalRequests, DiskReplaySummary[] members) {
+        this.level = level;
+        this.policyName = policyName;
+        this.logicalRequests = logicalRequests;
+        this.members = members;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (DiskReplaySummary summary : members) {
+            if (summary.getRequestCount() > 0) {
+                first = Math.min(first, summary.getStats().getFirstArrival());
+                last = Math.max(last, summary.getStats().getLastCompletion());
+            }
+        }
+        this.span = first == Long.MAX_VALUE ? 0 : Math.max(last - first, 1);
+    }
+
+    public String getPolicyName() {
+        return policyName;
+    }
+
+    public long getLogicalRequests() {
+        return logicalRequests;
+    }
+
+    public DiskReplaySummary getMember(int disk) {
+        return members[disk];
+    }
+
+    public int getDisks() {
+        return members.length;
+    }
+
+    // Logical requests per time unit
+    public double getThroughput() {
+        return span == 0 ? 0 : (double) logicalRequests / span;
+    }
+
+    // Member requests per time unit, summed over the disks
+    public double getMemberThroughput() {
+        long total = 0;
+        for (DiskReplaySummary summary : members) {
+            total += summary.getRequestCount();
+        }
+        return span == 0 ? 0 : (double) total / span;
+    }
+
+    // Share of the array's span the disk spent seeking and transferring
+    public double getUtilisation(int disk) {
+        return span == 0 ? 0 : (double) members[disk].getStats().getBusyTime() / span;
+    }
+
+    public String format(String timeUnit) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "RAID-%d, %d disks, %s: %d logical requests, %.4f requests/%s"
+            + " (%.4f member requests/%s)%n", level, members.length, policyName, logicalRequests,
+            getThroughput(), timeUnit, getMemberThroughput(), timeUnit));
+        out.append(String.format(Locale.ROOT, "%-6s %10s %14s %11s %10s %10s%n",
+            "Disk", "Requests", "Movement", "Utilisation", "Avg Wait", "p99 Wait"));
+        for (int d = 0; d < members.length; d++) {
+            DiskReplaySummary summary = members[d];
+            out.append(String.format(Locale.ROOT, "%-6d %10d %14d %10.1f%% %10.2f %10d%n",
+                d, summary.getRequestCount(), summary.getTotalMovement(), 100 * getUtilisation(d),
+                summary.getAverageWaitTime(), summary.getStats().getWaits().percentile(99)));
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format("time units");
+    }
+}
+
+// Block I/O trace read from a memory-mapped file, a window at a time.
+// Text traces have one "timestamp,lba,size[,R|W]" line per request (blank
+// lines, '#' comments and a header line starting with a letter on line 1
+// are skipped); requests without a type are reads. Binary traces start with MAGIC, followed per request by
+// three varints: the zigzag timestamp delta, the zigzag LBA delta and the
+// size in sectors shifted left once with the write flag in the low bit,
+// which takes a few bytes per request for typical traces. Traces with the
+// older MAGIC_V1 header store the plain size and hold only reads. LBAs
+// become cylinders by dividing by sectorsPerCylinder.
+class DiskTraceReader implements DiskRequestStream, BlockRequestStream {
+    static final byte[] MAGIC = {'D', 'S', 'K', 'T', 'R', 'C', '0', '2'};
+    static final byte[] MAGIC_V1 = {'D', 'S', 'K', 'T', 'R', 'C', '0', '1'};
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final boolean binary;
+    private final boolean typed;
+    private final long sectorsPerCylinder;
+    private long[] lbas = new long[0];
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long line = 1;
+    private long lastArrival;
+    private long lastLba;
+
+    public DiskTraceReader(Path path, long sectorsPerCylinder) throws IOException {
+        if (sectorsPerCylinder < 1) {
+            throw new IllegalArgumentException("Sectors per cylinder must be positive");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.sectorsPerCylinder = sectorsPerCylinder;
+        map(0);
+        typed = hasHeader(MAGIC);
+        binary = typed || hasHeader(MAGIC_V1);
+        if (binary) {
+            window.position(MAGIC.length);
+        }
+    }
+
+    private boolean hasHeader(byte[] magic) {
+        boolean match = fileSize >= magic.length;
+        for (int i = 0; i < magic.length && match; i++) {
+            match = window.get(i) == magic[i];
+        }
+        return match;
+    }
+
+    // Highest LBA in the trace, read without building the requests
+    public static long maxLba(Path path) throws IOException {
+        try (DiskTraceReader reader = new DiskTraceReader(path, 1)) {
+            long[] arrivals = new long[4096];
+            long[] lbas = new long[4096];
+            int[] sectors = new int[4096];
+            boolean[] writes = new boolean[4096];
+            long max = -1;
+            int count;
+            while ((count = reader.readBlocks(arrivals, lbas, sectors, writes)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    max = Math.max(max, lbas[i]);
+                }
+            }
+            return max;
+        }
+    }
+
+    @Override
+    public int read(long[] arrivals, int[] cylinders, int[] offsets, int[] sectors, boolean[] writes)
+            throws IOException {
+        if (lbas.length < arrivals.length) {
+            lbas = new long[arrivals.length];
+        }
+        int count = readBlocks(arrivals, lbas, sectors, writes);
+        for (int i = 0; i < count; i++) {
+            long cylinder = lbas[i] / sectorsPerCylinder;
+            if (cylinder > Integer.MAX_VALUE) {
+                throw new IOException("LBA " + lbas[i] + " maps past the last cylinder");
+            }
+            cylinders[i] = (int) cylinder;
+            offsets[i] = (int) (lbas[i] % sectorsPerCylinder);
+        }
+        return count;
+    }
+
+    @Override
+    public int readBlocks(long[] arrivals, long[] lbas, int[] sectors, boolean[] writes) throws IOException {
+        return binary ? readBinary(arrivals, lbas, sectors, writes) : readText(arrivals, lbas, sectors, writes);
+    }
+
+    private int readBinary(long[] arrivals, long[] lbas, int[] sectors, boolean[] writes) throws IOException {
+        int count = 0;
+        while (count < arrivals.length && windowStart + window.position() < fileSize) {
+            lastArrival += unzigzag(readVarint());
+            lastLba += unzigzag(readVarint());
+            arrivals[count] = lastArrival;
+            lbas[count] = lastLba;
+            long size = readVarint();
+            writes[count] = typed && (size & 1) == 1;
+            sectors[count] = (int) Math.min(typed ? size >>> 1 : size, Integer.MAX_VALUE);
+            count++;
+        }
+        return count;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = nextByte();
+            if (b == -1) {
+                throw new IOException("Truncated record at byte " + (windowStart + window.position()));
+            }
+            if (shift == 63 && (b & 0x7E) != 0) {
+                throw new IOException("Varint too large at byte " + (windowStart + window.position()));
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint at byte " + (windowStart + window.position()));
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private int readText(long[] arrivals, long[] lbas, int[] sectors, boolean[] writes) throws IOException {
+        long[] fields = new long[3];
+        int count = 0;
+        while (count < arrivals.length) {
+            int c = nextByte();
+            if (c == -1) break;
+            while (c == ' ' || c == '\t') {
+                c = nextByte();
+            }
+            if (c == -1) break;
+            if (c == '\n' || c == '\r') {
+                if (c == '\n') line++;
+                continue;
+            }
+            if (c == '#' || (line == 1 && Character.isLetter(c))) {
+                // Comment or header: skip the rest of the line
+                while (c != -1 && c != '\n') {
+                    c = nextByte();
+                }
+                line++;
+                continue;
+            }
+
+            int field = 0;
+            long value = 0;
+            boolean digits = false;
+            int type = 0;
+            while (true) {
+                if (c >= '0' && c <= '9') {
+                    if (value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                        throw new IOException("Line " + line + ": number too large");
+                    }
+                    value = value * 10 + (c - '0');
+                    digits = true;
+                } else if (field == 3 && type == 0 && (c == 'R' || c == 'r' || c == 'W' || c == 'w')) {
+                    type = Character.toUpperCase(c);
+                } else if (c == ',' || c == '\n' || c == -1) {
+                    if (field == 3 ? digits || type == 0 : !digits || field > 3) {
+                        throw new IOException("Line " + line + ": expected timestamp,lba,size[,R|W]");
+                    }
+                    if (field < 3) {
+                        fields[field] = value;
+                    }
+                    field++;
+                    value = 0;
+                    digits = false;
+                    if (c != ',') break;
+                } else if (c != ' ' && c != '\t' && c != '\r') {
+                    throw new IOException("Line " + line + ": unexpected character '" + (char) c + "'");
+                }
+                c = nextByte();
+            }
+            if (c == '\n') line++;
+            if (field < 2) {
+                throw new IOException("Line " + line + ": expected timestamp,lba,size");
+            }
+            arrivals[count] = fields[0];
+            lbas[count] = fields[1];
+            sectors[count] = field >= 3 ? (int) Math.min(fields[2], Integer.MAX_VALUE) : 1;
+            writes[count] = type == 'W';
+            count++;
+        }
+        return count;
+    }
+
+    private int nextByte() throws IOException {
+        if (!window.hasRemaining()) {
+            long position = windowStart + window.position();
+            if (position >= fileSize) {
+                return -1;
+            }
+            map(position);
+        }
+        return window.get() & 0xFF;
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, fileSize - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Rewrites a text trace in the binary format
+    public static long convert(Path text, Path binary) throws IOException {
+        long records = 0;
+        try (DiskTraceReader reader = new DiskTraceReader(text, 1);
+             FileChannel out = FileChannel.open(binary, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Three varints take at most 30 bytes
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.put(MAGIC);
+            long[] arrivals = new long[4096];
+            long[] lbas = new long[4096];
+            int[] sectors = new int[4096];
+            boolean[] writes = new boolean[4096];
+            long lastArrival = 0;
+            long lastLba = 0;
+            int count;
+            while ((count = reader.readBlocks(arrivals, lbas, sectors, writes)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    if (buffer.remaining() < 30) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) out.write(buffer);
+                        buffer.clear();
+                    }
+                    writeVarint(buffer, zigzag(arrivals[i] - lastArrival));
+                    writeVarint(buffer, zigzag(lbas[i] - lastLba));
+                    writeVarint(buffer, (long) sectors[i] << 1 | (writes[i] ? 1 : 0));
+                    lastArrival = arrivals[i];
+                    lastLba = lbas[i];
+                }
+                records += count;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+        }
+        return records;
+    }
+
+    private static void writeVarint(ByteBuffer buffer, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+}
+
+// Headless trace replay:
+//   java DiskSchedulingGUI [--policy NAME] [--cylinders N] [--sectors-per-cylinder K]
+//       [--seek-rate R] [--service-time T] [--start C] [--direction left|right]
+//       [--csv FILE] [--json FILE] [--raid 0|1|5 --disks N --stripe SECTORS]
+//       [--rpm R [--sectors-per-track S] [--units-per-second U]] <trace>
+//   java DiskSchedulingGUI --convert <trace.csv> <trace.bin>
+// Without --policy every policy is replayed, all of them in parallel. --cylinders defaults to
+// whatever the highest LBA of the trace needs. With --raid the trace is replayed on an array,
+// one policy after another with the member disks in parallel; --cylinders is then per member
+// and --csv/--json are not written. --rpm replaces the linear seek rate and service time with
+// the drive model; S defaults to 63 and U to 1000 (millisecond timestamps). The Deadline and
+// Anticipatory expiries and anticipation window are scaled to U.
+class DiskTraceReplay {
+    public static void run(String[] args) {
+        ArrayList<String> policies = new ArrayList<>();
+        long cylinders = -1;
+        long sectorsPerCylinder = 1;
+        double seekRate = 1;
+        long serviceTime = 0;
+        int start = 0;
+        boolean movingUp = true;
+        ArrayList<String> files = new ArrayList<>();
+        boolean convert = false;
+        String csvFile = null;
+        String jsonFile = null;
+        int raidLevel = -1;
+        int disks = 2;
+        long stripe = 128;
+        double rpm = 0;
+        int sectorsPerTrack = 63;
+        double unitsPerSecond = 1000;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                boolean hasValue = i + 1 < args.length;
+                if (arg.equals("--policy") && hasValue) {
+                    policies.add(args[++i]);
+                } else if (arg.equals("--cylinders") && hasValue) {
+                    cylinders = Long.parseLong(args[++i]);
+                } else if (arg.equals("--sectors-per-cylinder") && hasValue) {
+                    sectorsPerCylinder = Long.parseLong(args[++i]);
+                } else if (arg.equals("--seek-rate") && hasValue) {
+                    seekRate = Double.parseDouble(args[++i]);
+                } else if (arg.equals("--service-time") && hasValue) {
+                    serviceTime = Long.parseLong(args[++i]);
+                } else if (arg.equals("--start") && hasValue) {
+                    start = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--direction") && hasValue) {
+                    movingUp = args[++i].equalsIgnoreCase("right");
+                } else if (arg.equals("--csv") && hasValue) {
+                    csvFile = args[++i];
+                } else if (arg.equals("--json") && hasValue) {
+                    jsonFile = args[++i];
+                } else if (arg.equals("--raid") && hasValue) {
+                    raidLevel = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--disks") && hasValue) {
+                    disks = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--stripe") && hasValue) {
+                    stripe = Long.parseLong(args[++i]);
+                } else if (arg.equals("--rpm") && hasValue) {
+                    rpm = Double.parseDouble(args[++i]);
+                } else if (arg.equals("--sectors-per-track") && hasValue) {
+                    sectorsPerTrack = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--units-per-second") && hasValue) {
+                    unitsPerSecond = Double.parseDouble(args[++i]);
+                } else if (arg.equals("--convert")) {
+                    convert = true;
+                } else {
+                    files.add(arg);
+                }
+            }
+            if (files.size() != (convert ? 2 : 1)) {
+                System.err.println("Usage: java DiskSchedulingGUI [--policy NAME] [--cylinders N] "
+                    + "[--sectors-per-cylinder K] [--seek-rate R] [--service-time T] [--start C] "
+                    + "[--direction left|right] [--csv FILE] [--json FILE] "
+                    + "[--raid 0|1|5 --disks N --stripe SECTORS] "
+                    + "[--rpm R [--sectors-per-track S] [--units-per-second U]] <trace>");
+                System.err.println("       java DiskSchedulingGUI --convert <trace.csv> <trace.bin>");
+                System.exit(2);
+            }
+
+            if (convert) {
+                long records = DiskTraceReader.convert(Paths.get(files.get(0)), Paths.get(files.get(1)));
+                System.out.println("Wrote " + records + " records to " + files.get(1));
+                return;
+            }
+
+            Path trace = Paths.get(files.get(0));
+            if (cylinders < 0) {
+                long sectors = DiskTraceReader.maxLba(trace) + 1;
+                if (raidLevel >= 0) {
+                    sectors = DiskArray.memberSectors(raidLevel, disks, stripe, sectors);
+                }
+                cylinders = Math.max((sectors - 1) / sectorsPerCylinder, start) + 1;
+            }
+            if (cylinders > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many cylinders: " + cylinders);
+            }
+            if (policies.isEmpty()) {
+                policies.addAll(Arrays.asList(DiskSchedulingPolicy.NAMES));
+            }
+
+            int maxCylinder = (int) cylinders - 1;
+            DiskScheduler scheduler = rpm > 0
+                ? new DiskScheduler(maxCylinder, new DriveCostModel(maxCylinder, 0.5, 8.5, 16, rpm,
+                                                                    sectorsPerTrack, unitsPerSecond))
+                : new DiskScheduler(maxCylinder, seekRate, serviceTime);
+            if (raidLevel >= 0) {
+                DiskArray array = new DiskArray(raidLevel, disks, stripe, sectorsPerCylinder, scheduler);
+                for (String name : policies) {
+                    System.out.print(array.run(name, () -> new DiskTraceReader(trace, 1), start, movingUp, false));
+                }
+                return;
+            }
+
+            // Every policy streams its own reader over the shared mapping, all at once
+            ExecutorService pool = DiskPolicyComparison.newPool();
+            ArrayList<Future<DiskReplaySummary>> results = new ArrayList<>();
+            long spc = sectorsPerCylinder;
+            int startCylinder = start;
+            boolean up = movingUp;
+            for (String name : policies) {
+                DiskSchedulingPolicy policy = scheduler.newPolicy(name);
+                results.add(pool.submit(() -> {
+                    try (DiskTraceReader reader = new DiskTraceReader(trace, spc)) {
+                        return scheduler.replay(policy, reader, startCylinder, up);
+                    }
+                }));
+            }
+            ArrayList<DiskServiceStats> stats = new ArrayList<>();
+            for (Future<DiskReplaySummary> result : results) {
+                DiskReplaySummary summary = result.get();
+                System.out.println(summary);
+                stats.add(summary.getStats());
+            }
+            if (csvFile != null) {
+                Files.write(Paths.get(csvFile), DiskServiceStats.toCsv(stats).getBytes(StandardCharsets.UTF_8));
+            }
+            if (jsonFile != null) {
+                Files.write(Paths.get(jsonFile), DiskServiceStats.toJson(stats).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (ExecutionException ex) {
+            System.err.println("Error: " + ex.getCause().getMessage());
+            System.exit(1);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
+
+// Outcome of one scheduler run
+class DiskSchedule {
+    private final String policyName;
+    private final int[] path;
+    private final BitSet returnSteps;
+    private final int[] order;
+    private final long totalMovement;
+    private final long returnMovement;
+    private final long[] arrivals;
+    private final long[] dispatches;
+    private final long[] completions;
+    private final long endTime;
+    private final DiskServiceStats stats;
+
+    DiskSchedule(DiskHead head, int[] order, long[] arrivals, long[] dispatches,
+                 long[] completions, long endTime, DiskServiceStats stats) {
+        this.policyName = stats.getPolicyName();
+        this.stats = stats;
+        this.path = head.getPath();
+        this.returnSteps = head.getReturnSteps();
+        this.order = order;
+        this.totalMovement = head.getMovement();
+        this.returnMovement = head.getReturnMovement();
+        this.arrivals = arrivals;
+        this.dispatches = dispatches;
+        this.completions = completions;
+        this.endTime = endTime;
+    }
+
+    public String getPolicyName() {
+        return policyName;
+    }
+
+    // Every head position in order, including edge turns and the start
+    public int[] getPath() {
+        return path;
+    }
+
+    // Request indices in the order they were served
+    public int[] getOrder() {
+        return order;
+    }
+
+    // True if the step from path[step - 1] to path[step] was a return sweep
+    public boolean isReturnStep(int step) {
+        return returnSteps.get(step);
+    }
+
+    public BitSet getReturnSteps() {
+        return (BitSet) returnSteps.clone();
+    }
+
+    public long getTotalMovement() {
+        return totalMovement;
+    }
+
+    // Distance spent on wrap-around returns; zero for non-circular policies
+    public long getReturnMovement() {
+        return returnMovement;
+    }
+
+    public long getServiceMovement() {
+        return totalMovement - returnMovement;
+    }
+
+    public int getRequestCount() {
+        return order.length;
+    }
+
+    public long getArrival(int request) {
+        return arrivals[request];
+    }
+
+    public long getCompletion(int request) {
+        return completions[request];
+    }
+
+    // Time from arrival until the request was served
+    public long getResponseTime(int request) {
+        return completions[request] - arrivals[request];
+    }
+
+    public double getAverageResponseTime() {
+        long sum = 0;
+        for (int i = 0; i < order.length; i++) {
+            sum += completions[i] - arrivals[i];
+        }
+        return order.length == 0 ? 0 : (double) sum / order.length;
+    }
+
+    // Time the request spent pending before the policy picked it
+    public long getWaitTime(int request) {
+        return dispatches[request] - arrivals[request];
+    }
+
+    public double getAverageWaitTime() {
+        long sum = 0;
+        for (int i = 0; i < order.length; i++) {
+            sum += dispatches[i] - arrivals[i];
+        }
+        return order.length == 0 ? 0 : (double) sum / order.length;
+    }
+
+    // Longest wait of any request, the worst case of starvation
+    public long getMaxWaitTime() {
+        long max = 0;
+        for (int i = 0; i < order.length; i++) {
+            max = Math.max(max, dispatches[i] - arrivals[i]);
+        }
+        return max;
+    }
+
+    // Time the last request completed
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public DiskServiceStats getStats() {
+        return stats;
+    }
+}
+
+// Min/max pyramid over a head path: level 0 is the path itself and every
+// level above halves the one below, so the extent of any step range is found
+// in O(log n) and a million-step path can be drawn one pixel row at a time.
+class PathEnvelope {
+    private final int[][] min;
+    private final int[][] max;
+
+    public PathEnvelope(int[] path) {
+        int levels = 1;
+        for (int n = path.length; n > 1; n = (n + 1) / 2) {
+            levels++;
+        }
+        min = new int[levels][];
+        max = new int[levels][];
+        min[0] = path;
+        max[0] = path;
+        for (int level = 1; level < levels; level++) {
+            int[] lowerMin = min[level - 1];
+            int[] lowerMax = max[level - 1];
+            int n = (lowerMin.length + 1) / 2;
+            min[level] = new int[n];
+            max[level] = new int[n];
+            for (int j = 0; j < n; j++) {
+                int right = Math.min(2 * j + 1, lowerMin.length - 1);
+                min[level][j] = Math.min(lowerMin[2 * j], lowerMin[right]);
+                max[level][j] = Math.max(lowerMax[2 * j], lowerMax[right]);
+            }
+        }
+    }
+
+    public int length() {
+        return min[0].length;
+    }
+
+    public int get(int step) {
+        return min[0][step];
+    }
+
+    // Lowest and highest position over steps lo..hi inclusive, into out[0] and out[1]
+    public void range(int lo, int hi, int[] out) {
+        int low = Integer.MAX_VALUE;
+        int high = Integer.MIN_VALUE;
+        for (int level = 0; lo <= hi; level++) {
+            if ((lo & 1) == 1) {
+                low = Math.min(low, min[level][lo]);
+                high = Math.max(high, max[level][lo]);
+                lo++;
+            }
+            if ((hi & 1) == 0 && lo <= hi) {
+                low = Math.min(low, min[level][hi]);
+                high = Math.max(high, max[level][hi]);
+                hi--;
+            }
+            lo >>= 1;
+            hi >>= 1;
+        }
+        out[0] = low;
+        out[1] = high;
+    }
+}
+
+// Head moves of one or more runs as list rows. Only the positions are kept;
+// a row's text is built when the list asks for it, so a JList with a fixed
+// cell size formats just the rows on screen.
+class MoveLogModel extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<int[]> paths = new ArrayList<>();
+    private final ArrayList<BitSet> returnSteps = new ArrayList<>();
+    // First row of each section, plus the total row count at the end
+    private int[] offsets = {0};
+
+    // With more than one section every section starts with a header row
+    public void setSections(String[] sectionNames, int[][] sectionPaths, BitSet[] sectionReturns) {
+        int oldSize = getSize();
+        names.clear();
+        paths.clear();
+        returnSteps.clear();
+        boolean headers = sectionPaths.length > 1;
+        offsets = new int[sectionPaths.length + 1];
+        for (int s = 0; s < sectionPaths.length; s++) {
+            names.add(sectionNames[s]);
+            paths.add(sectionPaths[s]);
+            returnSteps.add(sectionReturns[s]);
+            int rows = Math.max(sectionPaths[s].length - 1, 0) + (headers ? 1 : 0);
+            offsets[s + 1] = offsets[s] + rows;
+        }
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (getSize() > 0) {
+            fireIntervalAdded(this, 0, getSize() - 1);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return offsets[offsets.length - 1];
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        int s = Arrays.binarySearch(offsets, index);
+        if (s < 0) {
+            s = -s - 2;
+        }
+        int step = index - offsets[s];
+        if (paths.size() > 1) {
+            if (step == 0) {
+                return names.get(s) + ":";
+            }
+        } else {
+            step++;
+        }
+        return format(paths.get(s), returnSteps.get(s), step);
+    }
+
+    private static String format(int[] path, BitSet returns, int step) {
+        return (returns.get(step) ? "Head returns from " : "Head moves from ")
+            + path[step - 1] + " to " + path[step];
+    }
+
+    // Writes every row, one per line, without building the log in memory
+    public void write(Writer out) throws IOException {
+        for (int s = 0; s < paths.size(); s++) {
+            int[] path = paths.get(s);
+            BitSet returns = returnSteps.get(s);
+            if (paths.size() > 1) {
+                out.write(names.get(s));
+                out.write(":\n");
+            }
+            for (int step = 1; step < path.length; step++) {
+                out.write(format(path, returns, step));
+                out.write('\n');
+            }
+        }
+    }
+}
+
 public class DiskSchedulingGUI extends JFrame {
     private JComboBox<String> algorithmComboBox;
     private JTextField requestsTextField;
     private JTextField initialPositionTextField;
     private JTextField directionTextField;
+    private JTextField arrivalsTextField;
+    private JTextField typesTextField;
+    private JTextField arrayTextField;
+    private JComboBox<String> costModelComboBox;
+    private JTextField seekRateTextField;
+    private JTextField serviceTimeTextField;
     private JTextArea outputTextArea;
     private VisualizationPanel visualizationPanel;
-    private ArrayList<Integer> currentSequence;
+    // Head moves of the last run, formatted only for the visible rows
+    private final MoveLogModel moveLog = new MoveLogModel();
+    private ExecutorService comparisonPool;
+    // Statistics of the last run, compare or replay, for export
+    private ArrayList<DiskServiceStats> lastStats = new ArrayList<>();
     private int diskSize = 200;  // Maximum disk size
 
     public DiskSchedulingGUI() {
@@ -23,12 +2799,12 @@ public class DiskSchedulingGUI extends JFrame {
         JPanel mainPanel = new JPanel(new BorderLayout());
 
         // Create the control panel
-        JPanel controlPanel = new JPanel(new GridLayout(5, 2, 10, 10));
+        JPanel controlPanel = new JPanel(new GridLayout(11, 2, 10, 10));
         controlPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
         // Algorithm selection
         JLabel algorithmLabel = new JLabel("Algorithm:");
-        algorithmComboBox = new JComboBox<>(new String[]{"FCFS", "SCAN"});
+        algorithmComboBox = new JComboBox<>(DiskSchedulingPolicy.NAMES);
         controlPanel.add(algorithmLabel);
         controlPanel.add(algorithmComboBox);
 
@@ -45,7 +2821,7 @@ public class DiskSchedulingGUI extends JFrame {
         controlPanel.add(initialPositionTextField);
 
         // Direction input
-        JLabel directionLabel = new JLabel("Direction (for SCAN - left/right):");
+        JLabel directionLabel = new JLabel("Direction (left/right):");
         directionTextField = new JTextField();
         controlPanel.add(directionLabel);
         controlPanel.add(directionTextField);
@@ -56,6 +2832,40 @@ public class DiskSchedulingGUI extends JFrame {
         controlPanel.add(diskSizeLabel);
         controlPanel.add(diskSizeTextField);
 
+        // Simulation inputs: arrival times are optional, all requests arrive at 0 without them
+        JLabel arrivalsLabel = new JLabel("Arrival Times in ms (optional):");
+        arrivalsTextField = new JTextField();
+        controlPanel.add(arrivalsLabel);
+        controlPanel.add(arrivalsTextField);
+
+        // Request types: reads unless marked W
+        JLabel typesLabel = new JLabel("Request Types R/W (optional):");
+        typesTextField = new JTextField();
+        controlPanel.add(typesLabel);
+        controlPanel.add(typesTextField);
+
+        // Array layout for Run Array; requests are then logical block numbers
+        JLabel arrayLabel = new JLabel("Array: RAID level, disks, stripe:");
+        arrayTextField = new JTextField("0, 4, 8");
+        controlPanel.add(arrayLabel);
+        controlPanel.add(arrayTextField);
+
+        JLabel seekRateLabel = new JLabel("Seek Rate (cylinders/ms):");
+        seekRateTextField = new JTextField("1");
+        controlPanel.add(seekRateLabel);
+        controlPanel.add(seekRateTextField);
+
+        JLabel serviceTimeLabel = new JLabel("Service Time per Request (ms):");
+        serviceTimeTextField = new JTextField("0");
+        controlPanel.add(serviceTimeLabel);
+        controlPanel.add(serviceTimeTextField);
+
+        // The drive model ignores the seek rate and service time above
+        JLabel costModelLabel = new JLabel("Cost Model:");
+        costModelComboBox = new JComboBox<>(new String[]{"Linear", "7200 RPM Drive"});
+        controlPanel.add(costModelLabel);
+        controlPanel.add(costModelComboBox);
+
         // Create visualization panel
         visualizationPanel = new VisualizationPanel();
         visualizationPanel.setPreferredSize(new Dimension(800, 400));
@@ -68,7 +2878,13 @@ public class DiskSchedulingGUI extends JFrame {
         outputTextArea.setLineWrap(true);
         outputTextArea.setWrapStyleWord(true);
         JScrollPane outputScrollPane = new JScrollPane(outputTextArea);
-        outputScrollPane.setPreferredSize(new Dimension(800, 150));
+        // A prototype row fixes the cell size, so the list never measures every move
+        JList<String> moveList = new JList<>(moveLog);
+        moveList.setPrototypeCellValue("Head returns from 2147483647 to 2147483647");
+        JTabbedPane outputTabs = new JTabbedPane();
+        outputTabs.addTab("Summary", outputScrollPane);
+        outputTabs.addTab("Head Moves", new JScrollPane(moveList));
+        outputTabs.setPreferredSize(new Dimension(800, 150));
 
         // Buttons
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -81,6 +2897,30 @@ public class DiskSchedulingGUI extends JFrame {
             }
         });
         buttonPanel.add(runButton);
+        JButton compareButton = new JButton("Compare All");
+        compareButton.addActionListener(e -> {
+            diskSize = Integer.parseInt(diskSizeTextField.getText());
+            compareAll();
+        });
+        buttonPanel.add(compareButton);
+        JButton arrayButton = new JButton("Run Array");
+        arrayButton.addActionListener(e -> {
+            diskSize = Integer.parseInt(diskSizeTextField.getText());
+            runArray();
+        });
+        buttonPanel.add(arrayButton);
+        JButton exportButton = new JButton("Export Stats...");
+        exportButton.addActionListener(e -> exportStats());
+        buttonPanel.add(exportButton);
+        JButton exportMovesButton = new JButton("Export Moves...");
+        exportMovesButton.addActionListener(e -> exportMoves());
+        buttonPanel.add(exportMovesButton);
+        JButton replayButton = new JButton("Replay Trace...");
+        replayButton.addActionListener(e -> {
+            diskSize = Integer.parseInt(diskSizeTextField.getText());
+            replayTrace();
+        });
+        buttonPanel.add(replayButton);
 
         // Layout components
         JPanel topPanel = new JPanel(new BorderLayout());
@@ -88,7 +2928,7 @@ public class DiskSchedulingGUI extends JFrame {
         
         JPanel centerPanel = new JPanel(new BorderLayout());
         centerPanel.add(visualizationPanel, BorderLayout.CENTER);
-        centerPanel.add(outputScrollPane, BorderLayout.SOUTH);
+        centerPanel.add(outputTabs, BorderLayout.SOUTH);
 
         // Add components to the main panel
         mainPanel.add(topPanel, BorderLayout.NORTH);
@@ -99,143 +2939,394 @@ public class DiskSchedulingGUI extends JFrame {
         setContentPane(mainPanel);
     }
 
+    // Requested cylinders; null (after telling the user) if one lies
+    // outside 0..maxCylinder
+    private int[] readCylinders(int maxCylinder) {
+        ArrayList<Integer> requests = parseRequests(requestsTextField.getText());
+        int[] cylinders = new int[requests.size()];
+        for (int i = 0; i < cylinders.length; i++) {
+            cylinders[i] = requests.get(i);
+            if (!inRange("Request " + cylinders[i], cylinders[i], maxCylinder)) {
+                return null;
+            }
+        }
+        return cylinders;
+    }
+
+    private boolean inRange(String what, long value, long max) {
+        if (value >= 0 && value <= max) {
+            return true;
+        }
+        JOptionPane.showMessageDialog(this, what + " is outside 0.." + max,
+                "Input Error", JOptionPane.ERROR_MESSAGE);
+        return false;
+    }
+
+    // Arrival time per request, all zero when the field is empty; null
+    // (after telling the user) if the count does not match
+    private long[] readArrivals(int count) {
+        long[] arrivals = new long[count];
+        if (!arrivalsTextField.getText().trim().isEmpty()) {
+            ArrayList<Integer> times = parseRequests(arrivalsTextField.getText());
+            if (times.size() != count) {
+                JOptionPane.showMessageDialog(this, "Enter one arrival time per request",
+                        "Input Error", JOptionPane.ERROR_MESSAGE);
+                return null;
+            }
+            for (int i = 0; i < arrivals.length; i++) {
+                arrivals[i] = times.get(i);
+            }
+        }
+        return arrivals;
+    }
+
+    // Write flag per request, all reads when the field is empty; null
+    // (after telling the user) if the entries do not match the requests
+    private boolean[] readWrites(int count) {
+        boolean[] writes = new boolean[count];
+        String text = typesTextField.getText().trim();
+        if (text.isEmpty()) {
+            return writes;
+        }
+        String[] types = text.split(",");
+        boolean valid = types.length == count;
+        for (int i = 0; i < types.length && valid; i++) {
+            String type = types[i].trim();
+            valid = type.equalsIgnoreCase("R") || type.equalsIgnoreCase("W");
+            writes[i] = type.equalsIgnoreCase("W");
+        }
+        if (!valid) {
+            JOptionPane.showMessageDialog(this, "Enter R or W for each request",
+                    "Input Error", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+        return writes;
+    }
+
+    private DiskScheduler readScheduler() {
+        return new DiskScheduler(diskSize, readCostModel(diskSize, 63));
+    }
+
+    // Cost model chosen in the form, in milliseconds
+    private DiskCostModel readCostModel(int maxCylinder, int sectorsPerTrack) {
+        if (costModelComboBox.getSelectedIndex() == 1) {
+            return new DriveCostModel(maxCylinder, sectorsPerTrack, 1000);
+        }
+        double seekRate = Double.parseDouble(seekRateTextField.getText().trim());
+        long serviceTime = Long.parseLong(serviceTimeTextField.getText().trim());
+        return new LinearCostModel(seekRate, serviceTime);
+    }
+
     private void runDiskScheduling() {
         String algorithm = (String) algorithmComboBox.getSelectedItem();
-        String requestsStr = requestsTextField.getText();
         int initialPosition = Integer.parseInt(initialPositionTextField.getText());
         String direction = directionTextField.getText();
 
-        ArrayList<Integer> requests = parseRequests(requestsStr);
+        int[] cylinders = readCylinders(diskSize);
+        if (cylinders == null || !inRange("Initial position " + initialPosition, initialPosition, diskSize)) {
+            return;
+        }
+        long[] arrivals = readArrivals(cylinders.length);
+        boolean[] writes = arrivals == null ? null : readWrites(cylinders.length);
+        if (writes == null) {
+            return;
+        }
+
+        DiskScheduler scheduler = readScheduler();
+        DiskSchedule schedule = scheduler.simulate(scheduler.newPolicy(algorithm), arrivals, cylinders, writes,
+                                                   initialPosition, direction.equalsIgnoreCase("right"));
+
         StringBuilder outputBuilder = new StringBuilder();
-        currentSequence = new ArrayList<>();
-        currentSequence.add(initialPosition);
+        outputBuilder.append(schedule.getPolicyName()).append(" Disk Scheduling:\n");
+        outputBuilder.append("Initial Head Position: ").append(initialPosition).append("\n");
+        if (!algorithm.equals("FCFS")) {
+            outputBuilder.append("Direction: ").append(direction).append("\n");
+        }
 
-        int totalMovement;
-        if (algorithm.equals("FCFS")) {
-            totalMovement = fcfs(requests, initialPosition, outputBuilder);
-        } else {
-            totalMovement = scan(requests, initialPosition, direction, outputBuilder);
+        int[] path = schedule.getPath();
+        String[] names = {schedule.getPolicyName()};
+        moveLog.setSections(names, new int[][]{path}, new BitSet[]{schedule.getReturnSteps()});
+        visualizationPanel.showPaths(new PathEnvelope[]{new PathEnvelope(path)}, names);
+        outputBuilder.append("Head Moves: ").append(path.length - 1).append("\n");
+
+        outputBuilder.append("\nTotal Head Movement: ").append(schedule.getTotalMovement());
+        if (schedule.getReturnMovement() > 0) {
+            outputBuilder.append("\nService Movement: ").append(schedule.getServiceMovement());
+            outputBuilder.append("\nReturn Sweep Movement: ").append(schedule.getReturnMovement());
         }
+        outputBuilder.append("\nAverage Wait Time: ")
+                .append(String.format("%.2f", schedule.getAverageWaitTime())).append(" ms");
+        outputBuilder.append("\nAverage Response Time: ")
+                .append(String.format("%.2f", schedule.getAverageResponseTime())).append(" ms");
+        outputBuilder.append("\nAll Requests Served at: ").append(schedule.getEndTime()).append(" ms\n");
+        outputBuilder.append(schedule.getStats().format("ms"));
+        lastStats = new ArrayList<>(Collections.singletonList(schedule.getStats()));
+        outputTextArea.setText(outputBuilder.toString());
+    }
 
-        outputTextArea.setText(outputBuilder.toString() + "\nTotal Head Movement: " + totalMovement);
-        visualizationPanel.repaint();
+    // Saves the last statistics as JSON when the file name ends in .json, CSV otherwise
+    private void exportStats() {
+        if (lastStats.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Run, compare or replay first",
+                    "Nothing to Export", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        String content = file.toString().toLowerCase(Locale.ROOT).endsWith(".json")
+            ? DiskServiceStats.toJson(lastStats) : DiskServiceStats.toCsv(lastStats);
+        try {
+            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Could not write " + file + ": " + ex.getMessage(),
+                    "Export Failed", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
-    private int fcfs(ArrayList<Integer> requests, int initialPosition, StringBuilder outputBuilder) {
-        int totalMovement = 0;
-        outputBuilder.append("FCFS Disk Scheduling:\n");
-        outputBuilder.append("Initial Head Position: ").append(initialPosition).append("\n");
+    // Streams the move log to a file on a worker thread; the log is never built as one string
+    private void exportMoves() {
+        if (moveLog.getSize() == 0) {
+            JOptionPane.showMessageDialog(this, "Run, compare or replay first",
+                    "Nothing to Export", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    moveLog.write(out);
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(DiskSchedulingGUI.this,
+                            "Could not write " + file + ": " + cause.getMessage(),
+                            "Export Failed", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
 
-        int currentPosition = initialPosition;
-        for (int request : requests) {
-            outputBuilder.append("Head moves from ").append(currentPosition).append(" to ").append(request).append("\n");
-            totalMovement += Math.abs(request - currentPosition);
-            currentPosition = request;
-            currentSequence.add(request);
+    // Runs every policy on the entered workload in parallel and overlays their paths
+    private void compareAll() {
+        int initialPosition = Integer.parseInt(initialPositionTextField.getText());
+        boolean movingUp = directionTextField.getText().equalsIgnoreCase("right");
+        int[] cylinders = readCylinders(diskSize);
+        if (cylinders == null || !inRange("Initial position " + initialPosition, initialPosition, diskSize)) {
+            return;
+        }
+        long[] arrivals = readArrivals(cylinders.length);
+        boolean[] writes = arrivals == null ? null : readWrites(cylinders.length);
+        if (writes == null) {
+            return;
         }
+        DiskScheduler scheduler = readScheduler();
+        if (comparisonPool == null) {
+            comparisonPool = DiskPolicyComparison.newPool();
+        }
+        DiskPolicyComparison comparison = new DiskPolicyComparison(comparisonPool);
+        outputTextArea.setText("Comparing " + DiskSchedulingPolicy.NAMES.length + " policies...");
 
-        return totalMovement;
+        new SwingWorker<DiskSchedule[], Void>() {
+            private PathEnvelope[] envelopes;
+
+            @Override
+            protected DiskSchedule[] doInBackground() throws Exception {
+                DiskSchedule[] schedules = comparison.compare(scheduler, arrivals, cylinders, writes, initialPosition, movingUp);
+                envelopes = new PathEnvelope[schedules.length];
+                for (int i = 0; i < schedules.length; i++) {
+                    envelopes[i] = new PathEnvelope(schedules[i].getPath());
+                }
+                return schedules;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    DiskSchedule[] schedules = get();
+                    String[] names = new String[schedules.length];
+                    int[][] paths = new int[schedules.length][];
+                    BitSet[] returns = new BitSet[schedules.length];
+                    for (int i = 0; i < schedules.length; i++) {
+                        names[i] = schedules[i].getPolicyName();
+                        paths[i] = schedules[i].getPath();
+                        returns[i] = schedules[i].getReturnSteps();
+                    }
+                    moveLog.setSections(names, paths, returns);
+                    visualizationPanel.showPaths(envelopes, names);
+                    lastStats = new ArrayList<>();
+                    StringBuilder report = new StringBuilder(DiskPolicyComparison.formatTable(schedules));
+                    for (DiskSchedule schedule : schedules) {
+                        lastStats.add(schedule.getStats());
+                        report.append("\n").append(schedule.getPolicyName()).append(":\n")
+                              .append(schedule.getStats().format("ms"));
+                    }
+                    outputTextArea.setText(report.toString());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    outputTextArea.setText("Comparison failed: " + cause.getMessage());
+                }
+            }
+        }.execute();
     }
 
-    private int scan(ArrayList<Integer> requests, int initialPosition, String direction, StringBuilder outputBuilder) {
-        int totalMovement = 0;
-        outputBuilder.append("SCAN Disk Scheduling:\n");
-        outputBuilder.append("Initial Head Position: ").append(initialPosition).append("\n");
-        outputBuilder.append("Direction: ").append(direction).append("\n");
-
-        // Create a copy of requests and add initial position
-        ArrayList<Integer> allRequests = new ArrayList<>(requests);
-        if (!allRequests.contains(initialPosition)) {
-            allRequests.add(initialPosition);
-        }
-
-        // Sort all requests
-        Collections.sort(allRequests);
-
-        // Find the position where initialPosition would be inserted
-        int startIndex = Collections.binarySearch(allRequests, initialPosition);
-        if (startIndex < 0) {
-            startIndex = -(startIndex + 1);
-        }
-
-        ArrayList<Integer> sequence = new ArrayList<>();
-        int currentPosition = initialPosition;
-        sequence.add(currentPosition);
-
-        if (direction.equalsIgnoreCase("right")) {
-            // Move right first
-            // Add all requests to the right of initial position
-            for (int i = startIndex; i < allRequests.size(); i++) {
-                int request = allRequests.get(i);
-                if (request != currentPosition) {
-                    outputBuilder.append("Head moves from ").append(currentPosition)
-                            .append(" to ").append(request).append("\n");
-                    totalMovement += Math.abs(request - currentPosition);
-                    currentPosition = request;
-                    sequence.add(request);
-                }
-            }
-            
-            // If we haven't reached the end of disk, go there
-            if (currentPosition < diskSize) {
-                outputBuilder.append("Head moves from ").append(currentPosition)
-                        .append(" to ").append(diskSize).append("\n");
-                totalMovement += Math.abs(diskSize - currentPosition);
-                currentPosition = diskSize;
-                sequence.add(diskSize);
-            }
-
-            // Now move left through remaining requests
-            for (int i = allRequests.size() - 1; i >= 0; i--) {
-                int request = allRequests.get(i);
-                if (request < currentPosition) {
-                    outputBuilder.append("Head moves from ").append(currentPosition)
-                            .append(" to ").append(request).append("\n");
-                    totalMovement += Math.abs(currentPosition - request);
-                    currentPosition = request;
-                    sequence.add(request);
-                }
-            }
-        } else {  // direction is left
-            // Move left first
-            // Add all requests to the left of initial position
-            for (int i = startIndex - 1; i >= 0; i--) {
-                int request = allRequests.get(i);
-                if (request != currentPosition) {
-                    outputBuilder.append("Head moves from ").append(currentPosition)
-                            .append(" to ").append(request).append("\n");
-                    totalMovement += Math.abs(request - currentPosition);
-                    currentPosition = request;
-                    sequence.add(request);
-                }
-            }
-            
-            // If we haven't reached the beginning of disk, go there
-            if (currentPosition > 0) {
-                outputBuilder.append("Head moves from ").append(currentPosition)
-                        .append(" to 0\n");
-                totalMovement += currentPosition;
-                currentPosition = 0;
-                sequence.add(0);
-            }
-
-            // Now move right through remaining requests
-            for (int i = 0; i < allRequests.size(); i++) {
-                int request = allRequests.get(i);
-                if (request > currentPosition) {
-                    outputBuilder.append("Head moves from ").append(currentPosition)
-                            .append(" to ").append(request).append("\n");
-                    totalMovement += Math.abs(request - currentPosition);
-                    currentPosition = request;
-                    sequence.add(request);
-                }
-            }
-        }
-
-        // Update the currentSequence for visualization
-        currentSequence = sequence;
-        return totalMovement;
+    // Spreads the requests, read as logical blocks, over a RAID array whose
+    // members each have diskSize cylinders of one block, and overlays the
+    // members' head paths
+    private void runArray() {
+        String[] layout = arrayTextField.getText().split(",");
+        if (layout.length != 3) {
+            JOptionPane.showMessageDialog(this, "Enter the array as: RAID level, disks, stripe",
+                    "Input Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String algorithm = (String) algorithmComboBox.getSelectedItem();
+        int initialPosition = Integer.parseInt(initialPositionTextField.getText());
+        boolean movingUp = directionTextField.getText().equalsIgnoreCase("right");
+        // Requests are logical blocks here, checked against the array below
+        int[] cylinders = readCylinders(Integer.MAX_VALUE);
+        if (cylinders == null || !inRange("Initial position " + initialPosition, initialPosition, diskSize)) {
+            return;
+        }
+        long[] arrivals = readArrivals(cylinders.length);
+        boolean[] writes = arrivals == null ? null : readWrites(cylinders.length);
+        if (writes == null) {
+            return;
+        }
+        long[] lbas = new long[cylinders.length];
+        long maxLba = 0;
+        for (int i = 0; i < lbas.length; i++) {
+            lbas[i] = cylinders[i];
+            maxLba = Math.max(maxLba, lbas[i]);
+        }
+        DiskArray array;
+        try {
+            int level = Integer.parseInt(layout[0].trim());
+            int disks = Integer.parseInt(layout[1].trim());
+            long stripe = Long.parseLong(layout[2].trim());
+            array = new DiskArray(level, disks, stripe, 1, readScheduler());
+            if (DiskArray.memberSectors(level, disks, stripe, maxLba + 1) > diskSize + 1L) {
+                JOptionPane.showMessageDialog(this, "Request " + maxLba + " does not fit on " + disks
+                        + " disks of " + (diskSize + 1) + " blocks", "Input Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Input Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        outputTextArea.setText("Simulating " + array.getDisks() + " disks...");
+
+        new SwingWorker<DiskArrayReport, Void>() {
+            private PathEnvelope[] envelopes;
+
+            @Override
+            protected DiskArrayReport doInBackground() throws Exception {
+                DiskArrayReport report = array.run(algorithm, () -> BlockRequestStream.of(arrivals, lbas, writes),
+                                                   initialPosition, movingUp, true);
+                envelopes = new PathEnvelope[report.getDisks()];
+                for (int d = 0; d < envelopes.length; d++) {
+                    envelopes[d] = new PathEnvelope(report.getMember(d).getPath());
+                }
+                return report;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    DiskArrayReport report = get();
+                    String[] names = new String[report.getDisks()];
+                    int[][] paths = new int[names.length][];
+                    BitSet[] returns = new BitSet[names.length];
+                    lastStats = new ArrayList<>();
+                    for (int d = 0; d < names.length; d++) {
+                        names[d] = "Disk " + d;
+                        paths[d] = report.getMember(d).getPath();
+                        returns[d] = report.getMember(d).getReturnSteps();
+                        lastStats.add(report.getMember(d).getStats());
+                    }
+                    moveLog.setSections(names, paths, returns);
+                    visualizationPanel.showPaths(envelopes, names);
+                    outputTextArea.setText(report.format("ms"));
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    outputTextArea.setText("Array simulation failed: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    // Streams a trace file through the selected policy on a worker thread.
+    // LBAs are scaled so the highest one lands on the last cylinder.
+    private void replayTrace() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path trace = chooser.getSelectedFile().toPath();
+        String algorithm = (String) algorithmComboBox.getSelectedItem();
+        String initialText = initialPositionTextField.getText().trim();
+        int initialPosition = initialText.isEmpty() ? 0 : Integer.parseInt(initialText);
+        boolean movingUp = directionTextField.getText().equalsIgnoreCase("right");
+        int maxCylinder = diskSize;
+        if (!inRange("Initial position " + initialPosition, initialPosition, maxCylinder)) {
+            return;
+        }
+        DiskScheduler scheduler = new DiskScheduler(maxCylinder, readCostModel(maxCylinder, 63));
+        outputTextArea.setText("Replaying " + trace.getFileName() + " with " + algorithm + "...");
+
+        new SwingWorker<DiskReplaySummary, Void>() {
+            private long sectorsPerCylinder;
+            private PathEnvelope envelope;
+
+            @Override
+            protected DiskReplaySummary doInBackground() throws IOException {
+                sectorsPerCylinder = DiskTraceReader.maxLba(trace) / (maxCylinder + 1) + 1;
+                try (DiskTraceReader reader = new DiskTraceReader(trace, sectorsPerCylinder)) {
+                    DiskReplaySummary summary = scheduler.replay(
+                        scheduler.newPolicy(algorithm), reader, initialPosition, movingUp, true);
+                    envelope = new PathEnvelope(summary.getPath());
+                    return summary;
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    DiskReplaySummary summary = get();
+                    lastStats = new ArrayList<>(Collections.singletonList(summary.getStats()));
+                    String[] names = {summary.getPolicyName()};
+                    moveLog.setSections(names, new int[][]{summary.getPath()}, new BitSet[]{summary.getReturnSteps()});
+                    visualizationPanel.showPaths(new PathEnvelope[]{envelope}, names);
+                    outputTextArea.setText("Trace: " + trace.getFileName()
+                        + " (" + sectorsPerCylinder + " sectors per cylinder)\n"
+                        + "Requests: " + summary.getRequestCount() + "\n"
+                        + "Total Head Movement: " + summary.getTotalMovement() + "\n"
+                        + "Return Sweep Movement: " + summary.getReturnMovement() + "\n"
+                        + String.format("Average Response Time: %.2f%n", summary.getAverageResponseTime())
+                        + summary.getStats().format("time units")
+                        + "All Requests Served at: " + summary.getEndTime());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    outputTextArea.setText("Replay failed: " + cause.getMessage());
+                }
+            }
+        }.execute();
     }
+
     private ArrayList<Integer> parseRequests(String requestsStr) {
         ArrayList<Integer> requests = new ArrayList<>();
         String[] parts = requestsStr.split(",");
@@ -245,9 +3336,85 @@ public class DiskSchedulingGUI extends JFrame {
         return requests;
     }
 
+    // Draws head paths with time running down. Zoom with the mouse wheel,
+    // drag to pan and double-click to see the whole run again. When a pixel
+    // row covers more than one step only the extent of the head over those
+    // steps is drawn, so the cost follows the panel height, not the path length.
     class VisualizationPanel extends JPanel {
         private static final int PADDING = 50;
         private static final int POINT_SIZE = 8;
+        // Most visible points that still get a cylinder label
+        private static final int LABEL_LIMIT = 40;
+        private static final Color[] PATH_COLORS = {
+            Color.BLUE, Color.RED, new Color(0, 150, 0), Color.MAGENTA, Color.ORANGE, new Color(0, 150, 150),
+            Color.GRAY, new Color(120, 60, 0)
+        };
+
+        private PathEnvelope[] envelopes;
+        private String[] pathNames;
+        private int steps;
+        // Visible time range in path steps
+        private double viewStart;
+        private double viewSpan;
+        private int dragY;
+        private double dragStart;
+
+        VisualizationPanel() {
+            addMouseWheelListener(e -> {
+                if (envelopes == null) {
+                    return;
+                }
+                double anchor = viewStart + viewSpan * Math.max(0, Math.min(1,
+                    (double) (e.getY() - PADDING) / Math.max(getHeight() - 2 * PADDING, 1)));
+                double span = viewSpan * Math.pow(1.25, e.getPreciseWheelRotation());
+                span = Math.min(Math.max(span, 2), maxSpan());
+                setView(anchor - (anchor - viewStart) * span / viewSpan, span);
+            });
+            MouseAdapter drag = new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    dragY = e.getY();
+                    dragStart = viewStart;
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    if (envelopes != null) {
+                        int height = Math.max(getHeight() - 2 * PADDING, 1);
+                        setView(dragStart - (double) (e.getY() - dragY) * viewSpan / height, viewSpan);
+                    }
+                }
+
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (envelopes != null && e.getClickCount() == 2) {
+                        setView(0, maxSpan());
+                    }
+                }
+            };
+            addMouseListener(drag);
+            addMouseMotionListener(drag);
+        }
+
+        void showPaths(PathEnvelope[] envelopes, String[] names) {
+            this.envelopes = envelopes;
+            this.pathNames = names;
+            steps = 0;
+            for (PathEnvelope envelope : envelopes) {
+                steps = Math.max(steps, envelope.length());
+            }
+            setView(0, maxSpan());
+        }
+
+        private double maxSpan() {
+            return Math.max(steps - 1, 1);
+        }
+
+        private void setView(double start, double span) {
+            viewSpan = span;
+            viewStart = Math.max(0, Math.min(start, maxSpan() - span));
+            repaint();
+        }
 
         @Override
         protected void paintComponent(Graphics g) {
@@ -255,7 +3422,7 @@ public class DiskSchedulingGUI extends JFrame {
             Graphics2D g2d = (Graphics2D) g;
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-            if (currentSequence == null || currentSequence.isEmpty()) {
+            if (envelopes == null) {
                 return;
             }
 
@@ -270,34 +3437,78 @@ public class DiskSchedulingGUI extends JFrame {
             // Draw labels
             g2d.drawString("Disk Position", width / 2, height + PADDING + 30);
             g2d.drawString("Time", 10, height / 2);
+            if (viewSpan < maxSpan()) {
+                g2d.drawString(String.format("Steps %d-%d of %d", (long) viewStart,
+                    (long) Math.ceil(viewStart + viewSpan), steps - 1), PADDING, PADDING - 10);
+            }
 
             // Scale factors
             double xScale = (double) width / diskSize;
-            double yScale = (double) height / (currentSequence.size() - 1);
+            double yScale = height / viewSpan;
+            boolean overlay = envelopes.length > 1;
+            int first = (int) viewStart;
+            int last = (int) Math.ceil(viewStart + viewSpan);
 
-            // Draw points and lines
-            g2d.setColor(Color.BLUE);
-            for (int i = 0; i < currentSequence.size(); i++) {
-                int x = PADDING + (int) (currentSequence.get(i) * xScale);
-                int y = PADDING + (int) (i * yScale);
-
-                // Draw point
-                g2d.fillOval(x - POINT_SIZE/2, y - POINT_SIZE/2, POINT_SIZE, POINT_SIZE);
-
-                // Draw line to next point
-                if (i < currentSequence.size() - 1) {
-                    int nextX = PADDING + (int) (currentSequence.get(i + 1) * xScale);
-                    int nextY = PADDING + (int) ((i + 1) * yScale);
-                    g2d.drawLine(x, y, nextX, nextY);
+            // Keep zoomed lines inside the plot, points may overhang the edges
+            Graphics2D plot = (Graphics2D) g2d.create();
+            plot.clipRect(0, PADDING - POINT_SIZE, getWidth(), height + 2 * POINT_SIZE);
+            int[] extent = new int[2];
+            for (int p = 0; p < envelopes.length; p++) {
+                PathEnvelope envelope = envelopes[p];
+                int end = Math.min(last, envelope.length() - 1);
+                Color color = overlay ? PATH_COLORS[p % PATH_COLORS.length] : Color.BLUE;
+                plot.setColor(color);
+                g2d.setColor(color);
+                if (end - first <= height / 2) {
+                    // Few enough steps to draw every point, plus the lines leading out of view
+                    boolean labels = !overlay && end - first < LABEL_LIMIT;
+                    for (int i = Math.max(first - 1, 0); i <= Math.min(end + 1, envelope.length() - 1); i++) {
+                        int x = PADDING + (int) (envelope.get(i) * xScale);
+                        int y = PADDING + (int) ((i - viewStart) * yScale);
+                        if (i >= first && i <= end) {
+                            plot.fillOval(x - POINT_SIZE/2, y - POINT_SIZE/2, POINT_SIZE, POINT_SIZE);
+                            if (labels) {
+                                g2d.drawString(String.valueOf(envelope.get(i)), x - 20, height + PADDING + 15);
+                            }
+                        }
+                        if (i < envelope.length() - 1) {
+                            int nextX = PADDING + (int) (envelope.get(i + 1) * xScale);
+                            int nextY = PADDING + (int) ((i + 1 - viewStart) * yScale);
+                            plot.drawLine(x, y, nextX, nextY);
+                        }
+                    }
+                } else {
+                    // One span per pixel row from the lowest to the highest
+                    // position over its steps; the step before is included so
+                    // moves between rows stay connected
+                    for (int row = 0; row < height; row++) {
+                        int lo = (int) (viewStart + row / yScale);
+                        int hi = Math.min((int) (viewStart + (row + 1) / yScale), end);
+                        if (lo > hi) {
+                            break;
+                        }
+                        envelope.range(Math.max(lo - 1, 0), hi, extent);
+                        plot.drawLine(PADDING + (int) (extent[0] * xScale), PADDING + row,
+                                      PADDING + (int) (extent[1] * xScale), PADDING + row);
+                    }
                 }
 
-                // Draw coordinate labels
-                g2d.drawString(String.valueOf(currentSequence.get(i)), x - 20, height + PADDING + 15);
+                // Legend
+                if (overlay) {
+                    int legendY = PADDING + 15 * p;
+                    g2d.fillRect(width + PADDING - 90, legendY - 8, 10, 10);
+                    g2d.drawString(pathNames[p], width + PADDING - 75, legendY + 2);
+                }
             }
+            plot.dispose();
         }
     }
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            DiskTraceReplay.run(args);
+            return;
+        }
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -3,102 +3,2602 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
 import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.concurrent.*;
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 class Graph {
     private final int vertices;
-    private final int[][] capacity;
-    private int[][] flow;
+    private int edgeCount;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private long[] edgeCap;
+    // Per-unit costs, allocated only once an edge has a non-zero cost
+    private long[] edgeCost;
+
+    // Residual graph in compressed (CSR) form, rebuilt lazily after addEdge.
+    // The arcs leaving v are arcStart[v] .. arcStart[v + 1] - 1; every edge
+    // owns a forward arc and a reverse arc that point at each other via arcMate.
+    private int[] arcStart;
+    private int[] arcHead;
+    private long[] arcResidual;
+    private int[] arcMate;
+    private int[] edgeArc;
+    private long[] arcCost;
+    // Set while edgeCap is still the array of the FlowNetwork this graph came from
+    private boolean capacityShared;
 
     public Graph(int vertices) {
+        this(vertices, 16);
+    }
+
+    // Fresh zero-flow state over a frozen network. Topology arrays are shared
+    // with the network; only the residual capacities belong to this graph.
+    public Graph(FlowNetwork network) {
+        this.vertices = network.vertices;
+        this.edgeCount = network.edgeFrom.length;
+        this.edgeFrom = network.edgeFrom;
+        this.edgeTo = network.edgeTo;
+        this.edgeCap = network.edgeCap;
+        this.edgeCost = network.edgeCost;
+        this.arcStart = network.arcStart;
+        this.arcHead = network.arcHead;
+        this.arcMate = network.arcMate;
+        this.arcCost = network.arcCost;
+        this.edgeArc = network.edgeArc;
+        this.arcResidual = new long[arcHead.length];
+        this.capacityShared = true;
+        clearFlow();
+    }
+
+    public Graph(int vertices, int expectedEdges) {
         this.vertices = vertices;
-        this.capacity = new int[vertices][vertices];
-        this.flow = new int[vertices][vertices];
+        int initial = Math.max(expectedEdges, 1);
+        this.edgeFrom = new int[initial];
+        this.edgeTo = new int[initial];
+        this.edgeCap = new long[initial];
+    }
+
+    // Returns the index of the new edge. Adding edges after a solve keeps the
+    // flow already routed, so the next maxFlow continues from it.
+    public int addEdge(int from, int to, long cap) {
+        return addEdge(from, to, cap, 0);
+    }
+
+    public int addEdge(int from, int to, long cap, long cost) {
+        if (from < 0 || from >= vertices || to < 0 || to >= vertices) {
+            throw new IllegalArgumentException("Edge " + from + " -> " + to + " is outside 0.." + (vertices - 1));
+        }
+        if (edgeCount == edgeFrom.length) {
+            int grown = edgeCount + (edgeCount >> 1) + 1;
+            edgeFrom = Arrays.copyOf(edgeFrom, grown);
+            edgeTo = Arrays.copyOf(edgeTo, grown);
+            edgeCap = Arrays.copyOf(edgeCap, grown);
+            if (edgeCost != null) {
+                edgeCost = Arrays.copyOf(edgeCost, grown);
+            }
+        }
+        if (cost != 0 && edgeCost == null) {
+            edgeCost = new long[edgeFrom.length];
+        }
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeCap[edgeCount] = cap;
+        if (edgeCost != null) {
+            edgeCost[edgeCount] = cost;
+        }
+        edgeCount++;
+        arcStart = null;
+        return edgeCount - 1;
+    }
+
+    // Raising a capacity only widens the forward arc, so the current flow stays feasible
+    public void increaseCapacity(int edge, long delta) {
+        if (edge < 0 || edge >= edgeCount) {
+            throw new IllegalArgumentException("No edge with index " + edge);
+        }
+        if (delta < 0) {
+            throw new IllegalArgumentException("Capacity of edge " + edge + " can only be increased");
+        }
+        if (capacityShared) {
+            edgeCap = edgeCap.clone();
+            capacityShared = false;
+        }
+        edgeCap[edge] += delta;
+        if (edgeArc != null && edge < edgeArc.length) {
+            // Also valid while a rebuild is pending, since flows are read back from these arcs
+            arcResidual[edgeArc[edge]] += delta;
+        }
+    }
+
+    public long getCapacity(int edge) {
+        return edgeCap[edge];
+    }
+
+    public long getCost(int edge) {
+        return edgeCost != null ? edgeCost[edge] : 0;
+    }
+
+    public boolean hasCosts() {
+        return edgeCost != null;
+    }
+
+    // Resets every edge to zero flow without reallocating the residual graph
+    public void clearFlow() {
+        if (edgeArc == null) {
+            return;
+        }
+        Arrays.fill(arcResidual, 0);
+        for (int e = 0; e < edgeArc.length; e++) {
+            arcResidual[edgeArc[e]] = edgeCap[e];
+        }
+    }
+
+    // Immutable snapshot of the current edges, shareable between threads
+    public FlowNetwork freeze() {
+        arcStart();
+        return new FlowNetwork(vertices,
+            Arrays.copyOf(edgeFrom, edgeCount), Arrays.copyOf(edgeTo, edgeCount),
+            Arrays.copyOf(edgeCap, edgeCount), edgeCost != null ? Arrays.copyOf(edgeCost, edgeCount) : null,
+            arcStart, arcHead, arcMate, arcCost, edgeArc);
+    }
+
+    // Sum of flow times cost over all edges
+    public long getTotalCost() {
+        if (edgeCost == null) {
+            return 0;
+        }
+        long[] flow = getFlow();
+        long total = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            total += flow[e] * edgeCost[e];
+        }
+        return total;
+    }
+
+    public int getVertexCount() {
+        return vertices;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    private void buildResidual() {
+        // Carry the flow of edges that existed before the rebuild
+        long[] previousFlow = edgeArc != null ? getFlow(edgeArc.length) : new long[0];
+
+        int arcs = 2 * edgeCount;
+        arcStart = new int[vertices + 1];
+        arcHead = new int[arcs];
+        arcResidual = new long[arcs];
+        arcMate = new int[arcs];
+        edgeArc = new int[edgeCount];
+        arcCost = edgeCost != null ? new long[arcs] : null;
+
+        for (int e = 0; e < edgeCount; e++) {
+            arcStart[edgeFrom[e] + 1]++;
+            arcStart[edgeTo[e] + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            arcStart[v + 1] += arcStart[v];
+        }
+
+        int[] next = Arrays.copyOf(arcStart, vertices);
+        for (int e = 0; e < edgeCount; e++) {
+            int forward = next[edgeFrom[e]]++;
+            int reverse = next[edgeTo[e]]++;
+            arcHead[forward] = edgeTo[e];
+            arcHead[reverse] = edgeFrom[e];
+            long flow = e < previousFlow.length ? previousFlow[e] : 0;
+            arcResidual[forward] = edgeCap[e] - flow;
+            arcResidual[reverse] = flow;
+            arcMate[forward] = reverse;
+            arcMate[reverse] = forward;
+            edgeArc[e] = forward;
+            if (arcCost != null) {
+                arcCost[forward] = edgeCost[e];
+                arcCost[reverse] = -edgeCost[e];
+            }
+        }
+    }
+
+    public long maxFlow(int source, int sink) {
+        return maxFlow(source, sink, new EdmondsKarp());
+    }
+
+    public long maxFlow(int source, int sink, MaxFlowAlgorithm algorithm) {
+        return maxFlow(source, sink, algorithm, MaxFlowListener.NONE);
+    }
+
+    public long maxFlow(int source, int sink, MaxFlowAlgorithm algorithm, MaxFlowListener listener) {
+        if (source == sink) {
+            return 0;
+        }
+        return algorithm.maxFlow(this, source, sink, listener);
+    }
+
+    // Residual arrays shared with the max-flow engines
+    int[] arcStart() {
+        if (arcStart == null) {
+            buildResidual();
+        }
+        return arcStart;
+    }
+
+    int[] arcHead() {
+        arcStart();
+        return arcHead;
+    }
+
+    long[] arcResidual() {
+        arcStart();
+        return arcResidual;
+    }
+
+    int[] arcMate() {
+        arcStart();
+        return arcMate;
+    }
+
+    // Cost of each arc; a reverse arc refunds the cost of its edge
+    long[] arcCost() {
+        arcStart();
+        if (arcCost == null) {
+            arcCost = new long[arcHead.length];
+        }
+        return arcCost;
+    }
+
+    // Source side of the residual graph after a max-flow solve, found with a
+    // single BFS. Every edge leaving that side is saturated and forms the cut.
+    public MinCut minCut(int source) {
+        int[] arcStart = arcStart();
+        BitSet sourceSide = new BitSet(vertices);
+        int[] queue = new int[vertices];
+        int queueHead = 0;
+        int queueTail = 0;
+        sourceSide.set(source);
+        queue[queueTail++] = source;
+
+        while (queueHead < queueTail) {
+            int current = queue[queueHead++];
+            for (int a = arcStart[current]; a < arcStart[current + 1]; a++) {
+                int next = arcHead[a];
+                if (arcResidual[a] > 0 && !sourceSide.get(next)) {
+                    sourceSide.set(next);
+                    queue[queueTail++] = next;
+                }
+            }
+        }
+
+        int cutCount = 0;
+        int[] cutEdges = new int[16];
+        long value = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            if (sourceSide.get(edgeFrom[e]) && !sourceSide.get(edgeTo[e])) {
+                if (cutCount == cutEdges.length) {
+                    cutEdges = Arrays.copyOf(cutEdges, 2 * cutCount);
+                }
+                cutEdges[cutCount++] = e;
+                value += edgeCap[e];
+            }
+        }
+        return new MinCut(value, sourceSide, Arrays.copyOf(cutEdges, cutCount));
+    }
+
+    public int getFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+    public int getTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    // Flow on each edge, indexed in the order the edges were added
+    public long[] getFlow() {
+        return getFlow(edgeCount);
+    }
+
+    private long[] getFlow(int edges) {
+        long[] flow = new long[edges];
+        if (edgeArc == null) {
+            return flow;
+        }
+        for (int e = 0; e < Math.min(edges, edgeArc.length); e++) {
+            flow[e] = edgeCap[e] - arcResidual[edgeArc[e]];
+        }
+        return flow;
+    }
+}
+
+interface MaxFlowAlgorithm {
+    String[] NAMES = {"Edmonds-Karp", "Dinic", "Push-Relabel", "Capacity Scaling",
+                      "Min-Cost (Shortest Paths)", "Min-Cost (Cost Scaling)"};
+
+    String getName();
+
+    // Pushes as much flow as the residual graph allows and returns the amount pushed
+    default long maxFlow(Graph graph, int source, int sink) {
+        return maxFlow(graph, source, sink, MaxFlowListener.NONE);
+    }
+
+    long maxFlow(Graph graph, int source, int sink, MaxFlowListener listener);
+
+    static MaxFlowAlgorithm forName(String name) {
+        switch (name) {
+            case "Edmonds-Karp":
+                return new EdmondsKarp();
+            case "Dinic":
+                return new Dinic();
+            case "Push-Relabel":
+                return new PushRelabel();
+            case "Capacity Scaling":
+                return new CapacityScaling();
+            case "Min-Cost (Shortest Paths)":
+                return new SuccessiveShortestPaths();
+            case "Min-Cost (Cost Scaling)":
+                return new CostScaling();
+            default:
+                throw new IllegalArgumentException("Unknown max-flow algorithm: " + name);
+        }
+    }
+}
+
+// Progress callback for long solves. Engines call it after every augmenting
+// path (Edmonds-Karp, Dinic) or every batch of discharges (push-relabel);
+// throwing CancellationException from it abandons the solve.
+interface MaxFlowListener {
+    MaxFlowListener NONE = (steps, flowValue) -> { };
+
+    void progress(long steps, long flowValue);
+}
+
+// Solver statistics for one solve. Pass it (wrapping the real listener) as
+// the MaxFlowListener; engines look for it once before solving and report
+// only at phase boundaries, so an ordinary listener costs nothing extra.
+// Every finished phase is also committed as a JFR MaxFlowPhaseEvent.
+class MaxFlowMetrics implements MaxFlowListener {
+    private final String algorithm;
+    private final MaxFlowListener delegate;
+
+    private long steps;
+    private long augmentations;
+    private long phases;
+    private long arcsScanned;
+    private long minBottleneck = Long.MAX_VALUE;
+    private long maxBottleneck;
+    private long pushed;
+    private long allocatedArrays;
+    private long allocatedBytes;
+    private long totalNanos;
+    private long longestPhaseNanos;
+
+    private long phaseStart;
+    private long phaseSteps;
+    private long phaseArcs;
+    private long phasePushed;
+    private MaxFlowPhaseEvent event;
+    private boolean finished;
+
+    public MaxFlowMetrics(String algorithm) {
+        this(algorithm, MaxFlowListener.NONE);
+    }
+
+    public MaxFlowMetrics(String algorithm, MaxFlowListener delegate) {
+        this.algorithm = algorithm;
+        this.delegate = delegate;
+        startPhase();
+    }
+
+    // The metrics carried by a listener, or null when none were requested
+    static MaxFlowMetrics of(MaxFlowListener listener) {
+        return listener instanceof MaxFlowMetrics ? (MaxFlowMetrics) listener : null;
+    }
+
+    @Override
+    public void progress(long steps, long flowValue) {
+        delegate.progress(steps, flowValue);
+    }
+
+    void allocated(int arrays, long bytes) {
+        allocatedArrays += arrays;
+        allocatedBytes += bytes;
+    }
+
+    void augmented(long bottleneck) {
+        augmentations++;
+        phaseSteps++;
+        phasePushed += bottleneck;
+        minBottleneck = Math.min(minBottleneck, bottleneck);
+        maxBottleneck = Math.max(maxBottleneck, bottleneck);
+    }
+
+    // Work steps that are not augmenting paths, such as push-relabel discharges
+    void stepped(long count) {
+        phaseSteps += count;
+    }
+
+    void scanned(long arcs) {
+        phaseArcs += arcs;
+    }
+
+    void endPhase(String kind) {
+        long nanos = System.nanoTime() - phaseStart;
+        phases++;
+        steps += phaseSteps;
+        arcsScanned += phaseArcs;
+        pushed += phasePushed;
+        totalNanos += nanos;
+        longestPhaseNanos = Math.max(longestPhaseNanos, nanos);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.algorithm = algorithm;
+            event.kind = kind;
+            event.phase = phases;
+            event.steps = phaseSteps;
+            event.arcsScanned = phaseArcs;
+            event.pushed = phasePushed;
+            event.commit();
+        }
+        startPhase();
+    }
+
+    private void startPhase() {
+        phaseSteps = 0;
+        phaseArcs = 0;
+        phasePushed = 0;
+        event = new MaxFlowPhaseEvent();
+        event.begin();
+        phaseStart = System.nanoTime();
+    }
+
+    // Totals so far; the first call also commits a MaxFlowSolveEvent
+    public MaxFlowStats snapshot() {
+        MaxFlowStats stats = new MaxFlowStats(algorithm, phases, steps, augmentations, arcsScanned,
+            augmentations > 0 ? minBottleneck : 0, maxBottleneck, pushed,
+            allocatedArrays, allocatedBytes, totalNanos, longestPhaseNanos);
+        if (!finished) {
+            finished = true;
+            MaxFlowSolveEvent solveEvent = new MaxFlowSolveEvent();
+            if (solveEvent.shouldCommit()) {
+                solveEvent.algorithm = algorithm;
+                solveEvent.phases = phases;
+                solveEvent.steps = steps;
+                solveEvent.arcsScanned = arcsScanned;
+                solveEvent.pushed = pushed;
+                solveEvent.allocatedBytes = allocatedBytes;
+                solveEvent.solveNanos = totalNanos;
+                solveEvent.commit();
+            }
+        }
+        return stats;
+    }
+}
+
+// Immutable copy of MaxFlowMetrics, for display and export
+final class MaxFlowStats {
+    private final String algorithm;
+    private final long phases;
+    private final long steps;
+    private final long augmentations;
+    private final long arcsScanned;
+    private final long minBottleneck;
+    private final long maxBottleneck;
+    private final long pushed;
+    private final long allocatedArrays;
+    private final long allocatedBytes;
+    private final long totalNanos;
+    private final long longestPhaseNanos;
+
+    MaxFlowStats(String algorithm, long phases, long steps, long augmentations, long arcsScanned,
+                 long minBottleneck, long maxBottleneck, long pushed,
+                 long allocatedArrays, long allocatedBytes, long totalNanos, long longestPhaseNanos) {
+        this.algorithm = algorithm;
+        this.phases = phases;
+        this.steps = steps;
+        this.augmentations = augmentations;
+        this.arcsScanned = arcsScanned;
+        this.minBottleneck = minBottleneck;
+        this.maxBottleneck = maxBottleneck;
+        this.pushed = pushed;
+        this.allocatedArrays = allocatedArrays;
+        this.allocatedBytes = allocatedBytes;
+        this.totalNanos = totalNanos;
+        this.longestPhaseNanos = longestPhaseNanos;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getPhases() {
+        return phases;
+    }
+
+    // Augmenting paths, plus discharges for push-relabel
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getAugmentations() {
+        return augmentations;
+    }
+
+    public long getArcsScanned() {
+        return arcsScanned;
+    }
+
+    public long getMinBottleneck() {
+        return minBottleneck;
+    }
+
+    public long getMaxBottleneck() {
+        return maxBottleneck;
+    }
+
+    public long getAllocatedArrays() {
+        return allocatedArrays;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getLongestPhaseNanos() {
+        return longestPhaseNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append("Phases: ").append(phases).append("\n");
+        out.append("Steps: ").append(steps).append(" (").append(augmentations).append(" augmenting paths)\n");
+        if (augmentations > 0) {
+            out.append("Bottleneck: min ").append(minBottleneck).append(", max ").append(maxBottleneck)
+               .append(", mean ").append(pushed / augmentations).append("\n");
+        }
+        out.append("Arcs scanned: ").append(arcsScanned).append("\n");
+        out.append("Allocated: ").append(allocatedArrays).append(" arrays, ")
+           .append(allocatedBytes / 1024).append(" KiB\n");
+        out.append(String.format(Locale.ROOT, "Solve time: %.3f ms (longest phase %.3f ms)%n",
+            totalNanos / 1e6, longestPhaseNanos / 1e6));
+        return out.toString();
+    }
+
+    public String toJson() {
+        return "{\"phases\":" + phases
+            + ",\"steps\":" + steps
+            + ",\"augmentations\":" + augmentations
+            + ",\"arcsScanned\":" + arcsScanned
+            + ",\"minBottleneck\":" + minBottleneck
+            + ",\"maxBottleneck\":" + maxBottleneck
+            + ",\"allocatedArrays\":" + allocatedArrays
+            + ",\"allocatedBytes\":" + allocatedBytes
+            + String.format(Locale.ROOT, ",\"solveMs\":%.3f,\"longestPhaseMs\":%.3f}",
+                totalNanos / 1e6, longestPhaseNanos / 1e6);
+    }
+}
+
+@Name("EdmondsKarpGUI.MaxFlowPhase")
+@Label("Max-Flow Phase")
+@Category("Max Flow")
+class MaxFlowPhaseEvent extends jdk.jfr.Event {
+    @Label("Algorithm")
+    String algorithm;
+    @Label("Kind")
+    String kind;
+    @Label("Phase")
+    long phase;
+    @Label("Steps")
+    long steps;
+    @Label("Arcs Scanned")
+    long arcsScanned;
+    @Label("Flow Pushed")
+    long pushed;
+}
+
+@Name("EdmondsKarpGUI.MaxFlowSolve")
+@Label("Max-Flow Solve")
+@Category("Max Flow")
+class MaxFlowSolveEvent extends jdk.jfr.Event {
+    @Label("Algorithm")
+    String algorithm;
+    @Label("Phases")
+    long phases;
+    @Label("Steps")
+    long steps;
+    @Label("Arcs Scanned")
+    long arcsScanned;
+    @Label("Flow Pushed")
+    long pushed;
+    @Label("Allocated Bytes")
+    long allocatedBytes;
+    @Label("Solve Time (ns)")
+    long solveNanos;
+}
+
+class EdmondsKarp implements MaxFlowAlgorithm {
+    protected int[] arcStart;
+    protected int[] arcHead;
+    protected long[] arcResidual;
+    protected int[] arcMate;
+    private int[] parentArc;
+    private int[] visited;
+    private int[] queue;
+    private int round;
+    private MaxFlowListener listener;
+    protected MaxFlowMetrics metrics;
+    private long augmentations;
+    private long pushed;
+
+    @Override
+    public String getName() {
+        return "Edmonds-Karp";
+    }
+
+    @Override
+    public long maxFlow(Graph graph, int source, int sink, MaxFlowListener listener) {
+        prepare(graph, listener);
+        return augmentPaths(source, sink, 1);
+    }
+
+    protected void prepare(Graph graph, MaxFlowListener listener) {
+        this.listener = listener;
+        metrics = MaxFlowMetrics.of(listener);
+        augmentations = 0;
+        pushed = 0;
+        int vertices = graph.getVertexCount();
+        arcStart = graph.arcStart();
+        arcHead = graph.arcHead();
+        arcResidual = graph.arcResidual();
+        arcMate = graph.arcMate();
+        parentArc = new int[vertices];
+        visited = new int[vertices];
+        queue = new int[vertices];
+        round = 0;
+        if (metrics != null) {
+            metrics.allocated(3, 12L * vertices);
+        }
+    }
+
+    // Augments along shortest paths whose arcs all have at least minResidual
+    // capacity left, until no such path remains
+    protected long augmentPaths(int source, int sink, long minResidual) {
+        long maxFlow = 0;
+
+        while (true) {
+            // Stamping avoids clearing the visited array before every BFS
+            round++;
+            visited[source] = round;
+            int queueHead = 0;
+            int queueTail = 0;
+            queue[queueTail++] = source;
+
+            while (queueHead < queueTail && visited[sink] != round) {
+                int current = queue[queueHead++];
+
+                for (int a = arcStart[current]; a < arcStart[current + 1]; a++) {
+                    int next = arcHead[a];
+                    if (visited[next] != round && arcResidual[a] >= minResidual) {
+                        visited[next] = round;
+                        parentArc[next] = a;
+                        queue[queueTail++] = next;
+                        if (next == sink) break;
+                    }
+                }
+            }
+
+            if (metrics != null) {
+                metrics.scanned(degreeSum(queue, queueHead));
+            }
+            if (visited[sink] != round) break;
+
+            long pathFlow = Long.MAX_VALUE;
+            for (int v = sink; v != source; v = arcHead[arcMate[parentArc[v]]]) {
+                pathFlow = Math.min(pathFlow, arcResidual[parentArc[v]]);
+            }
+
+            for (int v = sink; v != source; v = arcHead[arcMate[parentArc[v]]]) {
+                int a = parentArc[v];
+                arcResidual[a] -= pathFlow;
+                arcResidual[arcMate[a]] += pathFlow;
+            }
+
+            maxFlow += pathFlow;
+            pushed += pathFlow;
+            if (metrics != null) {
+                metrics.augmented(pathFlow);
+            }
+            listener.progress(++augmentations, pushed);
+        }
+
+        if (metrics != null) {
+            metrics.endPhase(minResidual > 1 ? "scaling" : "augment");
+        }
+        return maxFlow;
+    }
+
+    // Arcs out of the first count vertices of a BFS queue, i.e. the arcs it examined
+    private int degreeSum(int[] vertices, int count) {
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += arcStart[vertices[i] + 1] - arcStart[vertices[i]];
+        }
+        return sum;
+    }
+}
+
+// Delta-scaling: only arcs with at least delta residual capacity are used,
+// halving delta once no such path is left. Each phase needs at most O(E)
+// augmentations, so the total is O(E log U) for the largest capacity U.
+class CapacityScaling extends EdmondsKarp {
+    @Override
+    public String getName() {
+        return "Capacity Scaling";
+    }
+
+    @Override
+    public long maxFlow(Graph graph, int source, int sink, MaxFlowListener listener) {
+        prepare(graph, listener);
+
+        long largest = 0;
+        for (long residual : arcResidual) {
+            largest = Math.max(largest, residual);
+        }
+        if (largest == 0) {
+            return 0;
+        }
+
+        long maxFlow = 0;
+        for (long delta = Long.highestOneBit(largest); delta > 0; delta >>= 1) {
+            maxFlow += augmentPaths(source, sink, delta);
+        }
+        return maxFlow;
+    }
+}
+
+class Dinic implements MaxFlowAlgorithm {
+    private int[] arcStart;
+    private int[] arcHead;
+    private long[] arcResidual;
+    private int[] arcMate;
+    private int[] level;
+    private int[] currentArc;
+    private int[] queue;
+    private int[] pathArc;
+    private MaxFlowListener listener;
+    private MaxFlowMetrics metrics;
+    private long augmentations;
+    private long pushed;
+
+    @Override
+    public String getName() {
+        return "Dinic";
+    }
+
+    @Override
+    public long maxFlow(Graph graph, int source, int sink, MaxFlowListener listener) {
+        this.listener = listener;
+        augmentations = 0;
+        pushed = 0;
+        int vertices = graph.getVertexCount();
+        arcStart = graph.arcStart();
+        arcHead = graph.arcHead();
+        arcResidual = graph.arcResidual();
+        arcMate = graph.arcMate();
+
+        // All scratch space is allocated once; the phases below only reuse it
+        level = new int[vertices];
+        currentArc = new int[vertices];
+        queue = new int[vertices];
+        pathArc = new int[vertices];
+        metrics = MaxFlowMetrics.of(listener);
+        if (metrics != null) {
+            metrics.allocated(4, 16L * vertices);
+        }
+
+        long maxFlow = 0;
+        while (buildLevels(source, sink)) {
+            System.arraycopy(arcStart, 0, currentArc, 0, vertices);
+            maxFlow += blockingFlow(source, sink);
+            if (metrics != null) {
+                // Current arcs only move forward, so their offsets are the DFS scans
+                long scanned = 0;
+                for (int v = 0; v < vertices; v++) {
+                    scanned += Math.min(currentArc[v], arcStart[v + 1]) - arcStart[v];
+                }
+                metrics.scanned(scanned);
+                metrics.endPhase("blocking flow");
+            }
+        }
+        if (metrics != null) {
+            metrics.endPhase("final search");
+        }
+        return maxFlow;
+    }
+
+    // BFS from the source over residual arcs; false once the sink is unreachable
+    private boolean buildLevels(int source, int sink) {
+        Arrays.fill(level, -1);
+        level[source] = 0;
+        int queueHead = 0;
+        int queueTail = 0;
+        queue[queueTail++] = source;
+
+        while (queueHead < queueTail) {
+            int current = queue[queueHead++];
+            if (current == sink) break;
+
+            for (int a = arcStart[current]; a < arcStart[current + 1]; a++) {
+                int next = arcHead[a];
+                if (level[next] == -1 && arcResidual[a] > 0) {
+                    level[next] = level[current] + 1;
+                    queue[queueTail++] = next;
+                }
+            }
+        }
+        if (metrics != null) {
+            long scanned = 0;
+            for (int i = 0; i < queueHead; i++) {
+                scanned += arcStart[queue[i] + 1] - arcStart[queue[i]];
+            }
+            metrics.scanned(scanned);
+        }
+        return level[sink] != -1;
+    }
+
+    // Iterative DFS along the level graph. Current-arc pointers never move
+    // backwards, so a phase scans every arc at most once outside of augmentations.
+    private long blockingFlow(int source, int sink) {
+        long total = 0;
+        int depth = 0;
+        int v = source;
+
+        while (true) {
+            if (v == sink) {
+                long pathFlow = Long.MAX_VALUE;
+                for (int i = 0; i < depth; i++) {
+                    pathFlow = Math.min(pathFlow, arcResidual[pathArc[i]]);
+                }
+
+                int firstSaturated = -1;
+                for (int i = 0; i < depth; i++) {
+                    int a = pathArc[i];
+                    arcResidual[a] -= pathFlow;
+                    arcResidual[arcMate[a]] += pathFlow;
+                    if (firstSaturated == -1 && arcResidual[a] == 0) {
+                        firstSaturated = i;
+                    }
+                }
+                total += pathFlow;
+                pushed += pathFlow;
+                if (metrics != null) {
+                    metrics.augmented(pathFlow);
+                }
+                listener.progress(++augmentations, pushed);
+
+                // Resume from the tail of the first arc that was saturated
+                depth = firstSaturated;
+                v = arcHead[arcMate[pathArc[depth]]];
+                continue;
+            }
+
+            int end = arcStart[v + 1];
+            int a = currentArc[v];
+            while (a < end && (arcResidual[a] == 0 || level[arcHead[a]] != level[v] + 1)) {
+                a++;
+            }
+            currentArc[v] = a;
+
+            if (a < end) {
+                pathArc[depth++] = a;
+                v = arcHead[a];
+            } else {
+                // Dead end: drop v from the level graph and retreat
+                if (v == source) {
+                    return total;
+                }
+                level[v] = -1;
+                depth--;
+                v = arcHead[arcMate[pathArc[depth]]];
+                currentArc[v]++;
+            }
+        }
+    }
+}
+
+class PushRelabel implements MaxFlowAlgorithm {
+    // Global relabel once relabel work exceeds this many arcs per vertex, plus E
+    private static final int GLOBAL_RELABEL_FACTOR = 6;
+    // Report progress every 4096 discharges
+    private static final int PROGRESS_MASK = (1 << 12) - 1;
+
+    private int vertices;
+    private int[] arcStart;
+    private int[] arcHead;
+    private long[] arcResidual;
+    private int[] arcMate;
+    private int source;
+    private int sink;
+
+    private int[] label;
+    private long[] excess;
+    private int[] currentArc;
+    private int[] queue;
+
+    // Active vertices bucketed by label, as singly linked stacks
+    private int[] bucketHead;
+    private int[] bucketNext;
+    private int highest;
+
+    // All vertices with label below n, per label, for the gap heuristic
+    private int[] levelHead;
+    private int[] levelNext;
+    private int[] levelPrev;
+    private int maxLevel;
+
+    private long relabelWork;
+    private MaxFlowMetrics metrics;
+
+    @Override
+    public String getName() {
+        return "Push-Relabel";
+    }
+
+    @Override
+    public long maxFlow(Graph graph, int source, int sink, MaxFlowListener listener) {
+        vertices = graph.getVertexCount();
+        arcStart = graph.arcStart();
+        arcHead = graph.arcHead();
+        arcResidual = graph.arcResidual();
+        arcMate = graph.arcMate();
+        this.source = source;
+        this.sink = sink;
+
+        label = new int[vertices];
+        excess = new long[vertices];
+        currentArc = new int[vertices];
+        queue = new int[vertices];
+        bucketHead = new int[2 * vertices + 1];
+        bucketNext = new int[vertices];
+        levelHead = new int[vertices];
+        levelNext = new int[vertices];
+        levelPrev = new int[vertices];
+        metrics = MaxFlowMetrics.of(listener);
+        if (metrics != null) {
+            metrics.allocated(9, 4L * (2 * vertices + 1) + 36L * vertices);
+        }
+
+        // Saturate every residual arc out of the source; this also continues
+        // correctly from any feasible flow already in the residual graph
+        for (int a = arcStart[source]; a < arcStart[source + 1]; a++) {
+            long r = arcResidual[a];
+            if (r > 0) {
+                arcResidual[a] = 0;
+                arcResidual[arcMate[a]] += r;
+                excess[arcHead[a]] += r;
+            }
+        }
+
+        long relabelLimit = (long) GLOBAL_RELABEL_FACTOR * vertices + arcHead.length;
+        long discharges = 0;
+        long phaseStart = 0;
+        globalRelabel();
+
+        while (true) {
+            while (highest >= 0 && bucketHead[highest] == -1) {
+                highest--;
+            }
+            if (highest < 0) break;
+
+            int u = bucketHead[highest];
+            bucketHead[highest] = bucketNext[u];
+            if (label[u] != highest) {
+                // Lifted by a gap while queued; requeue under its current label
+                activate(u);
+                continue;
+            }
+
+            discharge(u);
+            if ((++discharges & PROGRESS_MASK) == 0) {
+                listener.progress(discharges, excess[sink]);
+            }
+
+            if (relabelWork > relabelLimit) {
+                if (metrics != null) {
+                    endPhase(discharges - phaseStart);
+                    phaseStart = discharges;
+                }
+                globalRelabel();
+            }
+        }
+
+        if (metrics != null) {
+            endPhase(discharges - phaseStart);
+        }
+        return excess[sink];
+    }
+
+    // A phase runs from one global relabel to the next. Arc scans made while
+    // pushing are not counted, only those of relabels and the relabel BFS.
+    private void endPhase(long discharges) {
+        metrics.stepped(discharges);
+        metrics.scanned(relabelWork);
+        metrics.endPhase("discharge");
+    }
+
+    private void discharge(int u) {
+        int unreachable = 2 * vertices;
+        while (excess[u] > 0 && label[u] < unreachable) {
+            int a = currentArc[u];
+            if (a == arcStart[u + 1]) {
+                relabel(u);
+                currentArc[u] = arcStart[u];
+                continue;
+            }
+
+            int w = arcHead[a];
+            if (arcResidual[a] > 0 && label[u] == label[w] + 1) {
+                long delta = Math.min(excess[u], arcResidual[a]);
+                arcResidual[a] -= delta;
+                arcResidual[arcMate[a]] += delta;
+                excess[u] -= delta;
+                if (excess[w] == 0 && w != source && w != sink) {
+                    excess[w] = delta;
+                    activate(w);
+                } else {
+                    excess[w] += delta;
+                }
+                if (arcResidual[a] == 0) {
+                    currentArc[u]++;
+                }
+            } else {
+                currentArc[u]++;
+            }
+        }
+    }
+
+    private void relabel(int u) {
+        int old = label[u];
+        if (old < vertices) {
+            unlink(u, old);
+            if (levelHead[old] == -1) {
+                gap(old);
+            }
+        }
+
+        int minLabel = 2 * vertices - 1;
+        for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+            if (arcResidual[a] > 0) {
+                minLabel = Math.min(minLabel, label[arcHead[a]]);
+            }
+        }
+        relabelWork += arcStart[u + 1] - arcStart[u] + 1;
+
+        label[u] = minLabel + 1;
+        if (label[u] < vertices) {
+            link(u, label[u]);
+        }
+    }
+
+    // Nothing above an empty label can reach the sink any more, so lift
+    // those vertices straight to n and let them drain back to the source
+    private void gap(int emptyLevel) {
+        for (int k = emptyLevel + 1; k <= maxLevel; k++) {
+            for (int v = levelHead[k]; v != -1; v = levelNext[v]) {
+                label[v] = vertices;
+            }
+            levelHead[k] = -1;
+        }
+        maxLevel = emptyLevel - 1;
+    }
+
+    // Exact distance labels: BFS to the sink, then to the source for vertices
+    // that can only return their excess
+    private void globalRelabel() {
+        int unreachable = 2 * vertices;
+        Arrays.fill(label, unreachable);
+        Arrays.fill(bucketHead, -1);
+        Arrays.fill(levelHead, -1);
+        highest = -1;
+        maxLevel = -1;
+        relabelWork = 0;
+
+        label[sink] = 0;
+        label[source] = vertices;
+        reverseBfs(sink);
+        reverseBfs(source);
+        if (metrics != null) {
+            long scanned = 0;
+            for (int v = 0; v < vertices; v++) {
+                if (label[v] < unreachable) {
+                    scanned += arcStart[v + 1] - arcStart[v];
+                }
+            }
+            metrics.scanned(scanned);
+        }
+
+        for (int v = 0; v < vertices; v++) {
+            currentArc[v] = arcStart[v];
+            if (label[v] < vertices && v != source) {
+                link(v, label[v]);
+            }
+            if (excess[v] > 0 && v != source && v != sink && label[v] < unreachable) {
+                activate(v);
+            }
+        }
+    }
+
+    private void reverseBfs(int root) {
+        int unreachable = 2 * vertices;
+        int queueHead = 0;
+        int queueTail = 0;
+        queue[queueTail++] = root;
+
+        while (queueHead < queueTail) {
+            int current = queue[queueHead++];
+            for (int a = arcStart[current]; a < arcStart[current + 1]; a++) {
+                int next = arcHead[a];
+                if (label[next] == unreachable && arcResidual[arcMate[a]] > 0) {
+                    label[next] = label[current] + 1;
+                    queue[queueTail++] = next;
+                }
+            }
+        }
+    }
+
+    private void activate(int v) {
+        int k = label[v];
+        bucketNext[v] = bucketHead[k];
+        bucketHead[k] = v;
+        if (k > highest) {
+            highest = k;
+        }
+    }
+
+    private void link(int v, int k) {
+        levelPrev[v] = -1;
+        levelNext[v] = levelHead[k];
+        if (levelHead[k] != -1) {
+            levelPrev[levelHead[k]] = v;
+        }
+        levelHead[k] = v;
+        if (k > maxLevel) {
+            maxLevel = k;
+        }
+    }
+
+    private void unlink(int v, int k) {
+        if (levelPrev[v] != -1) {
+            levelNext[levelPrev[v]] = levelNext[v];
+        } else {
+            levelHead[k] = levelNext[v];
+        }
+        if (levelNext[v] != -1) {
+            levelPrev[levelNext[v]] = levelPrev[v];
+        }
+    }
+}
+
+// Binary min-heap of vertex ids keyed by long distances, with decrease-key
+class IndexedMinHeap {
+    private final int[] heap;
+    private final int[] position;
+    private final long[] key;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        key = new long[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    // Inserts v, or lowers its key if v is already queued with a larger one
+    public void offer(int v, long k) {
+        int i = position[v];
+        if (i == -1) {
+            i = size++;
+            heap[i] = v;
+            position[v] = i;
+        } else if (k >= key[v]) {
+            return;
+        }
+        key[v] = k;
+        siftUp(i);
+    }
+
+    public int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (key[heap[parent]] <= key[v]) break;
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) {
+                child++;
+            }
+            if (key[heap[child]] >= key[v]) break;
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+}
+
+// Base of the min-cost engines. Both still return the maximum flow value,
+// but leave behind the maximum flow of least total cost (Graph.getTotalCost).
+abstract class MinCostFlowAlgorithm implements MaxFlowAlgorithm {
+    // Epsilon shrinks by this factor between cost-scaling refinements
+    private static final int SCALING_FACTOR = 8;
+    // Report progress every 4096 discharges, as PushRelabel does
+    private static final int PROGRESS_MASK = (1 << 12) - 1;
+
+    protected int vertices;
+    protected int[] arcStart;
+    protected int[] arcHead;
+    protected long[] arcResidual;
+    protected int[] arcMate;
+    protected long[] arcCost;
+    protected MaxFlowMetrics metrics;
+    protected MaxFlowListener listener;
+    private long discharges;
+    private long flowValue;
+
+    protected void prepare(Graph graph, MaxFlowListener listener) {
+        this.listener = listener;
+        metrics = MaxFlowMetrics.of(listener);
+        vertices = graph.getVertexCount();
+        arcStart = graph.arcStart();
+        arcHead = graph.arcHead();
+        arcResidual = graph.arcResidual();
+        arcMate = graph.arcMate();
+        arcCost = graph.arcCost();
+    }
+
+    // Goldberg-Tarjan cost scaling on the residual graph: turns the current
+    // flow into the cheapest flow with the same value at every vertex.
+    // Costs are multiplied by n + 1 so that epsilon = 1 means optimal.
+    // flowValue is only passed on to the listener, which hears from every
+    // refinement and every few thousand discharges and may cancel.
+    protected void cancelNegativeCycles(long flowValue) {
+        long scale = vertices + 1;
+        long maxCost = 0;
+        for (long cost : arcCost) {
+            maxCost = Math.max(maxCost, cost == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(cost));
+        }
+        if (maxCost == 0) {
+            return;
+        }
+        long epsilon;
+        try {
+            epsilon = Math.multiplyExact(maxCost, scale);
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Edge costs up to " + maxCost + " are too large for cost scaling on "
+                + vertices + " vertices (limit " + Long.MAX_VALUE / scale + ")");
+        }
+        this.flowValue = flowValue;
+        discharges = 0;
+
+        long[] price = new long[vertices];
+        long[] excess = new long[vertices];
+        int[] currentArc = new int[vertices];
+        int[] queue = new int[vertices];
+        boolean[] queued = new boolean[vertices];
+        if (metrics != null) {
+            metrics.allocated(5, 25L * vertices);
+        }
+
+        do {
+            epsilon = Math.max(1, epsilon / SCALING_FACTOR);
+            refine(epsilon, scale, price, excess, currentArc, queue, queued);
+            listener.progress(discharges, flowValue);
+            if (metrics != null) {
+                metrics.scanned(arcHead.length);
+                metrics.endPhase("refine");
+            }
+        } while (epsilon > 1);
+    }
+
+    private void refine(long epsilon, long scale, long[] price, long[] excess,
+                        int[] currentArc, int[] queue, boolean[] queued) {
+        // Saturate every arc with negative reduced cost; this breaks
+        // conservation, which the push/relabel loop below then repairs
+        for (int u = 0; u < vertices; u++) {
+            for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+                long r = arcResidual[a];
+                if (r > 0 && arcCost[a] * scale + price[u] - price[arcHead[a]] < 0) {
+                    arcResidual[a] = 0;
+                    arcResidual[arcMate[a]] += r;
+                    excess[u] -= r;
+                    excess[arcHead[a]] += r;
+                }
+            }
+        }
+
+        // Circular FIFO of vertices with positive excess
+        int queueHead = 0;
+        int pending = 0;
+        for (int v = 0; v < vertices; v++) {
+            currentArc[v] = arcStart[v];
+            if (excess[v] > 0) {
+                queue[pending++] = v;
+                queued[v] = true;
+            }
+        }
+
+        while (pending > 0) {
+            int u = queue[queueHead];
+            queueHead = (queueHead + 1) % vertices;
+            pending--;
+            queued[u] = false;
+            if ((++discharges & PROGRESS_MASK) == 0) {
+                listener.progress(discharges, flowValue);
+            }
+
+            while (excess[u] > 0) {
+                int a = currentArc[u];
+                if (a == arcStart[u + 1]) {
+                    // Relabel: lower the price just enough to create an admissible arc
+                    long best = Long.MIN_VALUE;
+                    for (int b = arcStart[u]; b < arcStart[u + 1]; b++) {
+                        if (arcResidual[b] > 0) {
+                            best = Math.max(best, price[arcHead[b]] - arcCost[b] * scale);
+                        }
+                    }
+                    price[u] = best - epsilon;
+                    currentArc[u] = arcStart[u];
+                    continue;
+                }
+
+                int v = arcHead[a];
+                if (arcResidual[a] > 0 && arcCost[a] * scale + price[u] - price[v] < 0) {
+                    long delta = Math.min(excess[u], arcResidual[a]);
+                    arcResidual[a] -= delta;
+                    arcResidual[arcMate[a]] += delta;
+                    excess[u] -= delta;
+                    excess[v] += delta;
+                    if (excess[v] > 0 && !queued[v]) {
+                        queue[(queueHead + pending) % vertices] = v;
+                        pending++;
+                        queued[v] = true;
+                    }
+                    if (arcResidual[a] == 0) {
+                        currentArc[u]++;
+                    }
+                } else {
+                    currentArc[u]++;
+                }
+            }
+        }
+    }
+}
+
+// Successive shortest paths: Dijkstra on reduced costs with Johnson
+// potentials, augmenting along the cheapest source-sink path each time.
+class SuccessiveShortestPaths extends MinCostFlowAlgorithm {
+    private static final long UNREACHED = Long.MAX_VALUE;
+
+    @Override
+    public String getName() {
+        return "Min-Cost (Shortest Paths)";
+    }
+
+    @Override
+    public long maxFlow(Graph graph, int source, int sink, MaxFlowListener listener) {
+        prepare(graph, listener);
+        long[] potential = new long[vertices];
+        if (!initialPotentials(potential)) {
+            // A warm start left a negative cycle; cancel it so potentials exist
+            cancelNegativeCycles(0);
+            initialPotentials(potential);
+        }
+
+        long[] dist = new long[vertices];
+        int[] parentArc = new int[vertices];
+        IndexedMinHeap heap = new IndexedMinHeap(vertices);
+        if (metrics != null) {
+            metrics.allocated(5, 36L * vertices);
+        }
+        long pushed = 0;
+        long augmentations = 0;
+
+        while (true) {
+            Arrays.fill(dist, UNREACHED);
+            dist[source] = 0;
+            heap.clear();
+            heap.offer(source, 0);
+            long scanned = 0;
+
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                if (u == sink) break;
+                scanned += arcStart[u + 1] - arcStart[u];
+                for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+                    if (arcResidual[a] == 0) continue;
+                    int v = arcHead[a];
+                    long candidate = dist[u] + arcCost[a] + potential[u] - potential[v];
+                    if (candidate < dist[v]) {
+                        dist[v] = candidate;
+                        parentArc[v] = a;
+                        heap.offer(v, candidate);
+                    }
+                }
+            }
+            if (metrics != null) {
+                metrics.scanned(scanned);
+            }
+            if (dist[sink] == UNREACHED) {
+                if (metrics != null) {
+                    metrics.endPhase("final search");
+                }
+                break;
+            }
+
+            // Capping at dist[sink] keeps reduced costs non-negative even
+            // though Dijkstra stopped as soon as the sink was settled
+            for (int v = 0; v < vertices; v++) {
+                potential[v] += Math.min(dist[v], dist[sink]);
+            }
+
+            long pathFlow = Long.MAX_VALUE;
+            for (int v = sink; v != source; v = arcHead[arcMate[parentArc[v]]]) {
+                pathFlow = Math.min(pathFlow, arcResidual[parentArc[v]]);
+            }
+            for (int v = sink; v != source; v = arcHead[arcMate[parentArc[v]]]) {
+                int a = parentArc[v];
+                arcResidual[a] -= pathFlow;
+                arcResidual[arcMate[a]] += pathFlow;
+            }
+            pushed += pathFlow;
+            if (metrics != null) {
+                metrics.augmented(pathFlow);
+                metrics.endPhase("shortest path");
+            }
+            listener.progress(++augmentations, pushed);
+        }
+        return pushed;
+    }
+
+    // Bellman-Ford (queue based) from a virtual root joined to every vertex.
+    // Only needed when some residual arc has a negative cost; returns false
+    // if the residual graph contains a negative cycle.
+    private boolean initialPotentials(long[] potential) {
+        boolean negative = false;
+        for (int a = 0; a < arcHead.length && !negative; a++) {
+            negative = arcResidual[a] > 0 && arcCost[a] < 0;
+        }
+        Arrays.fill(potential, 0);
+        if (!negative) {
+            return true;
+        }
+
+        int[] queue = new int[vertices];
+        boolean[] queued = new boolean[vertices];
+        // Arcs on the current shortest path, counting the one from the root
+        int[] pathLength = new int[vertices];
+        int queueHead = 0;
+        int count = vertices;
+        for (int v = 0; v < vertices; v++) {
+            queue[v] = v;
+            queued[v] = true;
+            pathLength[v] = 1;
+        }
+
+        while (count > 0) {
+            int u = queue[queueHead];
+            queueHead = (queueHead + 1) % vertices;
+            count--;
+            queued[u] = false;
+            for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+                int v = arcHead[a];
+                if (arcResidual[a] > 0 && potential[u] + arcCost[a] < potential[v]) {
+                    potential[v] = potential[u] + arcCost[a];
+                    pathLength[v] = pathLength[u] + 1;
+                    if (pathLength[v] > vertices) {
+                        return false;
+                    }
+                    if (!queued[v]) {
+                        queue[(queueHead + count) % vertices] = v;
+                        count++;
+                        queued[v] = true;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
+
+// Finds a maximum flow with Dinic, then makes it cheapest by cost scaling
+class CostScaling extends MinCostFlowAlgorithm {
+    @Override
+    public String getName() {
+        return "Min-Cost (Cost Scaling)";
+    }
+
+    @Override
+    public long maxFlow(Graph graph, int source, int sink, MaxFlowListener listener) {
+        long pushed = new Dinic().maxFlow(graph, source, sink, listener);
+        prepare(graph, listener);
+        cancelNegativeCycles(pushed);
+        return pushed;
+    }
+}
+
+// Capacity topology frozen out of a Graph. Nothing here is written after
+// construction, so any number of query Graphs can share it across threads.
+final class FlowNetwork {
+    final int vertices;
+    final int[] edgeFrom;
+    final int[] edgeTo;
+    final long[] edgeCap;
+    final long[] edgeCost;
+    final int[] arcStart;
+    final int[] arcHead;
+    final int[] arcMate;
+    final long[] arcCost;
+    final int[] edgeArc;
+
+    FlowNetwork(int vertices, int[] edgeFrom, int[] edgeTo, long[] edgeCap, long[] edgeCost,
+                int[] arcStart, int[] arcHead, int[] arcMate, long[] arcCost, int[] edgeArc) {
+        this.vertices = vertices;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeCap = edgeCap;
+        this.edgeCost = edgeCost;
+        this.arcStart = arcStart;
+        this.arcHead = arcHead;
+        this.arcMate = arcMate;
+        this.arcCost = arcCost;
+        this.edgeArc = edgeArc;
+    }
+
+    public int getVertexCount() {
+        return vertices;
+    }
+
+    public int getEdgeCount() {
+        return edgeFrom.length;
+    }
+}
+
+// Answers many (source, sink) queries against one FlowNetwork on a
+// work-stealing pool. Every query runs on its own residual state; idle
+// states are pooled and cleared for reuse instead of reallocated.
+class MaxFlowService {
+    private final FlowNetwork network;
+    private final ForkJoinPool pool;
+    private final ConcurrentLinkedQueue<Graph> idle = new ConcurrentLinkedQueue<>();
+
+    public MaxFlowService(FlowNetwork network) {
+        this(network, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MaxFlowService(FlowNetwork network, int parallelism) {
+        this.network = network;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public long maxFlow(int source, int sink, String algorithmName) {
+        Graph state = idle.poll();
+        if (state == null) {
+            state = new Graph(network);
+        } else {
+            state.clearFlow();
+        }
+        try {
+            return state.maxFlow(source, sink, MaxFlowAlgorithm.forName(algorithmName));
+        } finally {
+            idle.offer(state);
+        }
+    }
+
+    // Flow value for every pair (sources[i], sinks[i]), solved in parallel
+    public long[] maxFlows(int[] sources, int[] sinks, String algorithmName) {
+        if (sources.length != sinks.length) {
+            throw new IllegalArgumentException("Expected as many sinks as sources");
+        }
+        long[] result = new long[sources.length];
+        if (result.length == 0) {
+            return result;
+        }
+        pool.invoke(new QueryTask(sources, sinks, algorithmName, result, 0, sources.length));
+        return result;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class QueryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] sources;
+        private final int[] sinks;
+        private final String algorithmName;
+        private final long[] result;
+        private final int from;
+        private final int to;
+
+        QueryTask(int[] sources, int[] sinks, String algorithmName, long[] result, int from, int to) {
+            this.sources = sources;
+            this.sinks = sinks;
+            this.algorithmName = algorithmName;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                result[from] = maxFlow(sources[from], sinks[from], algorithmName);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new QueryTask(sources, sinks, algorithmName, result, from, mid),
+                      new QueryTask(sources, sinks, algorithmName, result, mid, to));
+        }
+    }
+}
+
+class MinCut {
+    private final long value;
+    private final BitSet sourceSide;
+    private final int[] cutEdges;
+
+    public MinCut(long value, BitSet sourceSide, int[] cutEdges) {
+        this.value = value;
+        this.sourceSide = sourceSide;
+        this.cutEdges = cutEdges;
+    }
+
+    // Total capacity of the cut edges, equal to the maximum flow
+    public long getValue() {
+        return value;
+    }
+
+    public boolean isOnSourceSide(int vertex) {
+        return sourceSide.get(vertex);
+    }
+
+    public int getSourceSideSize() {
+        return sourceSide.cardinality();
+    }
+
+    public BitSet getSourceSide() {
+        return (BitSet) sourceSide.clone();
+    }
+
+    // Indices, in addEdge order, of the saturated edges crossing the cut
+    public int[] getCutEdges() {
+        return cutEdges.clone();
+    }
+}
+
+// Keeps one Graph and its flow alive between queries. Edges can be added
+// and capacities raised; solve() then only augments the extra flow those
+// changes allow instead of starting again from zero.
+class IncrementalMaxFlow {
+    private final Graph graph;
+    private final int source;
+    private final int sink;
+    private final MaxFlowAlgorithm algorithm;
+    private long flowValue;
+    private long reusedFlow;
+    private long addedFlow;
+    private int solves;
+    private int changesSinceSolve;
+    private int changesApplied;
+
+    public IncrementalMaxFlow(Graph graph, int source, int sink, MaxFlowAlgorithm algorithm) {
+        this.graph = graph;
+        this.source = source;
+        this.sink = sink;
+        this.algorithm = algorithm;
+    }
+
+    public int addEdge(int from, int to, long cap) {
+        return addEdge(from, to, cap, 0);
+    }
+
+    public int addEdge(int from, int to, long cap, long cost) {
+        changesSinceSolve++;
+        return graph.addEdge(from, to, cap, cost);
+    }
+
+    public void increaseCapacity(int edge, long delta) {
+        changesSinceSolve++;
+        graph.increaseCapacity(edge, delta);
+    }
+
+    public long solve() {
+        return solve(MaxFlowListener.NONE);
+    }
+
+    public long solve(MaxFlowListener listener) {
+        reusedFlow = flowValue;
+        addedFlow = graph.maxFlow(source, sink, algorithm, listener);
+        flowValue += addedFlow;
+        solves++;
+        changesApplied = changesSinceSolve;
+        changesSinceSolve = 0;
+        return flowValue;
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public int getSink() {
+        return sink;
+    }
+
+    public MaxFlowAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getFlowValue() {
+        return flowValue;
+    }
+
+    // Flow carried over from the previous solve without being recomputed
+    public long getReusedFlow() {
+        return reusedFlow;
+    }
+
+    // Flow found by the last solve on top of the reused flow
+    public long getAddedFlow() {
+        return addedFlow;
+    }
+
+    public int getSolveCount() {
+        return solves;
+    }
+
+    // Edge additions and capacity increases absorbed by the last solve
+    public int getChangesApplied() {
+        return changesApplied;
+    }
+}
+
+// Headless batch solver for DIMACS max-flow files:
+//   java EdmondsKarpGUI [--algorithm NAME] [--no-cut] [--metrics] <file.max | ->
+//   java EdmondsKarpGUI [--algorithm NAME] --pairs s:t,... [--threads N] <file.max | ->
+// Arcs are parsed straight from a byte buffer into Graph's primitive edge
+// arrays. The result is printed as one JSON object on standard output.
+class DimacsMaxFlow {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength;
+    private int bufferPos;
+    private long line = 1;
+
+    private Graph graph;
+    private int source = -1;
+    private int sink = -1;
+
+    DimacsMaxFlow(InputStream in) {
+        this.in = in;
+    }
+
+    public static void run(String[] args) {
+        String algorithmName = "Dinic";
+        boolean reportCut = true;
+        boolean reportMetrics = false;
+        String pairs = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String path = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--algorithm") && i + 1 < args.length) {
+                algorithmName = args[++i];
+            } else if (args[i].equals("--pairs") && i + 1 < args.length) {
+                pairs = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--no-cut")) {
+                reportCut = false;
+            } else if (args[i].equals("--metrics")) {
+                reportMetrics = true;
+            } else {
+                path = args[i];
+            }
+        }
+        if (path == null) {
+            System.err.println("Usage: java EdmondsKarpGUI [--algorithm NAME] [--no-cut] [--metrics] [--pairs s:t,...] [--threads N] <file.max | ->");
+            System.exit(2);
+        }
+
+        try (InputStream in = path.equals("-") ? System.in : new FileInputStream(path)) {
+            MaxFlowAlgorithm algorithm = MaxFlowAlgorithm.forName(algorithmName);
+
+            long start = System.nanoTime();
+            DimacsMaxFlow reader = new DimacsMaxFlow(in);
+            reader.parse();
+            Graph graph = reader.graph;
+            long parsed = System.nanoTime();
+
+            graph.arcStart();
+            long built = System.nanoTime();
+
+            if (pairs != null) {
+                System.out.println(runPairs(graph, algorithm.getName(), pairs, threads, parsed - start, built - parsed));
+                return;
+            }
+
+            MaxFlowMetrics metrics = reportMetrics ? new MaxFlowMetrics(algorithm.getName()) : null;
+            long flow = graph.maxFlow(reader.source, reader.sink, algorithm,
+                metrics != null ? metrics : MaxFlowListener.NONE);
+            long solved = System.nanoTime();
+
+            MinCut cut = reportCut ? graph.minCut(reader.source) : null;
+            long cutDone = System.nanoTime();
+
+            StringBuilder out = new StringBuilder();
+            out.append("{\"algorithm\":\"").append(algorithm.getName()).append('"')
+               .append(",\"nodes\":").append(graph.getVertexCount())
+               .append(",\"arcs\":").append(graph.getEdgeCount())
+               .append(",\"source\":").append(reader.source + 1)
+               .append(",\"sink\":").append(reader.sink + 1)
+               .append(",\"flow\":").append(flow);
+            if (metrics != null) {
+                out.append(",\"metrics\":").append(metrics.snapshot().toJson());
+            }
+            out.append(",\"timingsMs\":{\"parse\":").append(millis(parsed - start))
+               .append(",\"build\":").append(millis(built - parsed))
+               .append(",\"solve\":").append(millis(solved - built));
+            if (cut != null) {
+                out.append(",\"cut\":").append(millis(cutDone - solved)).append('}');
+                out.append(",\"cut\":{\"capacity\":").append(cut.getValue())
+                   .append(",\"sourceSide\":").append(cut.getSourceSideSize())
+                   .append(",\"edges\":[");
+                int[] cutEdges = cut.getCutEdges();
+                for (int i = 0; i < cutEdges.length; i++) {
+                    int e = cutEdges[i];
+                    if (i > 0) out.append(',');
+                    out.append('[').append(graph.getFrom(e) + 1)
+                       .append(',').append(graph.getTo(e) + 1)
+                       .append(',').append(graph.getCapacity(e)).append(']');
+                }
+                out.append("]}");
+            } else {
+                out.append('}');
+            }
+            out.append('}');
+            System.out.println(out);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Answers every "s:t" pair (1-based, comma separated) on a shared network
+    private static String runPairs(Graph graph, String algorithmName, String pairs, int threads,
+                                   long parseNanos, long buildNanos) {
+        String[] items = pairs.split(",");
+        int[] sources = new int[items.length];
+        int[] sinks = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] st = items[i].trim().split(":");
+            if (st.length != 2) {
+                throw new IllegalArgumentException("expected s:t but got '" + items[i] + "'");
+            }
+            sources[i] = Integer.parseInt(st[0].trim()) - 1;
+            sinks[i] = Integer.parseInt(st[1].trim()) - 1;
+            int n = graph.getVertexCount();
+            if (sources[i] < 0 || sources[i] >= n || sinks[i] < 0 || sinks[i] >= n) {
+                throw new IllegalArgumentException("pair " + items[i].trim() + " out of range 1.." + n);
+            }
+        }
+
+        long start = System.nanoTime();
+        MaxFlowService service = new MaxFlowService(graph.freeze(), threads);
+        long[] flows;
+        try {
+            flows = service.maxFlows(sources, sinks, algorithmName);
+        } finally {
+            service.shutdown();
+        }
+        long solved = System.nanoTime();
+
+        StringBuilder out = new StringBuilder();
+        out.append("{\"algorithm\":\"").append(algorithmName).append('"')
+           .append(",\"nodes\":").append(graph.getVertexCount())
+           .append(",\"arcs\":").append(graph.getEdgeCount())
+           .append(",\"threads\":").append(threads)
+           .append(",\"timingsMs\":{\"parse\":").append(millis(parseNanos))
+           .append(",\"build\":").append(millis(buildNanos))
+           .append(",\"solve\":").append(millis(solved - start)).append('}')
+           .append(",\"queries\":[");
+        for (int i = 0; i < flows.length; i++) {
+            if (i > 0) out.append(',');
+            out.append("{\"source\":").append(sources[i] + 1)
+               .append(",\"sink\":").append(sinks[i] + 1)
+               .append(",\"flow\":").append(flows[i]).append('}');
+        }
+        out.append("]}");
+        return out.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    void parse() throws IOException {
+        int c;
+        while ((c = skipBlanks()) != -1) {
+            switch (c) {
+                case 'c':
+                case '\n':
+                    break;
+                case 'p':
+                    if (graph != null) {
+                        throw error("duplicate problem line");
+                    }
+                    if (!"max".equals(readWord())) {
+                        throw error("expected 'p max <nodes> <arcs>'");
+                    }
+                    long nodes = readNumber();
+                    long arcs = readNumber();
+                    if (nodes < 2 || nodes > Integer.MAX_VALUE || arcs < 0 || arcs > Integer.MAX_VALUE / 2) {
+                        throw error("unsupported problem size " + nodes + " nodes, " + arcs + " arcs");
+                    }
+                    graph = new Graph((int) nodes, (int) arcs);
+                    break;
+                case 'n': {
+                    int id = readNode();
+                    String kind = readWord();
+                    if (kind.equals("s")) {
+                        source = id;
+                    } else if (kind.equals("t")) {
+                        sink = id;
+                    } else {
+                        throw error("node designator must be 's' or 't'");
+                    }
+                    break;
+                }
+                case 'a': {
+                    int from = readNode();
+                    int to = readNode();
+                    long cap = readNumber();
+                    if (cap < 0) {
+                        throw error("negative capacity");
+                    }
+                    graph.addEdge(from, to, cap);
+                    break;
+                }
+                default:
+                    throw error("unexpected line type '" + (char) c + "'");
+            }
+            if (c != '\n') {
+                skipLine();
+            }
+        }
+
+        if (graph == null) {
+            throw error("missing problem line");
+        }
+        if (source < 0 || sink < 0) {
+            throw error("missing source or sink designator");
+        }
+    }
+
+    private int readNode() throws IOException {
+        if (graph == null) {
+            throw error("node reference before the problem line");
+        }
+        long id = readNumber();
+        if (id < 1 || id > graph.getVertexCount()) {
+            throw error("node " + id + " is outside 1.." + graph.getVertexCount());
+        }
+        return (int) id - 1;
+    }
+
+    private long readNumber() throws IOException {
+        int c = skipBlanks();
+        boolean negative = c == '-';
+        if (negative) {
+            c = read();
+        }
+        if (c < '0' || c > '9') {
+            throw error("expected a number");
+        }
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            if (value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                throw error("number too large");
+            }
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        unread(c);
+        return negative ? -value : value;
+    }
+
+    private String readWord() throws IOException {
+        int c = skipBlanks();
+        StringBuilder word = new StringBuilder();
+        while (c > ' ') {
+            word.append((char) c);
+            c = read();
+        }
+        unread(c);
+        return word.toString();
+    }
+
+    // Returns the next byte that is not a space, tab or carriage return
+    private int skipBlanks() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\t' || c == '\r') {
+            c = read();
+        }
+        return c;
+    }
+
+    private void skipLine() throws IOException {
+        int c = read();
+        while (c != '\n' && c != -1) {
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferLength) {
+            bufferLength = in.read(buffer, 0, BUFFER_SIZE);
+            bufferPos = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        int c = buffer[bufferPos++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private void unread(int c) {
+        if (c != -1) {
+            bufferPos--;
+            if (c == '\n') {
+                line--;
+            }
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("line " + line + ": " + message);
+    }
+}
+
+class GraphNode {
+    int id;
+    Point2D.Double position;
+    boolean sourceSide;
+    
+    public GraphNode(int id, Point2D.Double position) {
+        this.id = id;
+        this.position = position;
+    }
+}
+
+class GraphEdge {
+    GraphNode from;
+    GraphNode to;
+    long capacity;
+    long cost;
+    long flow;
+    boolean inCut;
+    
+    public GraphEdge(GraphNode from, GraphNode to, long capacity) {
+        this(from, to, capacity, 0);
+    }
+    
+    public GraphEdge(GraphNode from, GraphNode to, long capacity, long cost) {
+        this.from = from;
+        this.to = to;
+        this.capacity = capacity;
+        this.cost = cost;
+        this.flow = 0;
     }
+}
+
+// Uniform grid over node positions for hit-testing and viewport culling.
+// Rebuilt with a counting sort in O(n) whenever nodes have moved.
+class NodeGrid {
+    private static final double MIN_CELL_SIZE = 64;
+
+    private double minX;
+    private double minY;
+    private double cellSize = MIN_CELL_SIZE;
+    private int columns;
+    private int rows;
+    private int[] cellStart = new int[1];
+    private GraphNode[] cellNodes = new GraphNode[0];
 
-    public void addEdge(int from, int to, int cap) {
-        capacity[from][to] = cap;
+    public void rebuild(java.util.List<GraphNode> nodes) {
+        int n = nodes.size();
+        if (n == 0) {
+            columns = 0;
+            rows = 0;
+            cellStart = new int[1];
+            cellNodes = new GraphNode[0];
+            return;
+        }
+
+        minX = Double.MAX_VALUE;
+        minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (GraphNode node : nodes) {
+            minX = Math.min(minX, node.position.x);
+            minY = Math.min(minY, node.position.y);
+            maxX = Math.max(maxX, node.position.x);
+            maxY = Math.max(maxY, node.position.y);
+        }
+
+        // Grow the cells on sparse layouts so the grid stays within ~4 cells per node
+        double width = maxX - minX + 1;
+        double height = maxY - minY + 1;
+        cellSize = Math.max(MIN_CELL_SIZE, Math.sqrt(width * height / (4.0 * n)));
+        columns = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        int[] nodeCell = new int[n];
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < n; i++) {
+            GraphNode node = nodes.get(i);
+            nodeCell[i] = cellOf(node.position.x, node.position.y);
+            cellStart[nodeCell[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = Arrays.copyOf(cellStart, columns * rows);
+        cellNodes = new GraphNode[n];
+        for (int i = 0; i < n; i++) {
+            cellNodes[next[nodeCell[i]]++] = nodes.get(i);
+        }
     }
 
-    public int maxFlow(int source, int sink) {
-        int maxFlow = 0;
+    private int cellOf(double x, double y) {
+        return row(y) * columns + column(x);
+    }
 
-        while (true) {
-            int[] parent = new int[vertices];
-            Arrays.fill(parent, -1);
-            parent[source] = source;
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+    }
 
-            Queue<Integer> queue = new LinkedList<>();
-            queue.add(source);
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
 
-            while (!queue.isEmpty() && parent[sink] == -1) {
-                int current = queue.poll();
+    // Closest node whose centre lies within radius of (x, y), or null
+    public GraphNode nearest(double x, double y, double radius) {
+        if (columns == 0) {
+            return null;
+        }
+        GraphNode best = null;
+        double bestDistance = radius * radius;
+        for (int r = row(y - radius); r <= row(y + radius); r++) {
+            for (int c = column(x - radius); c <= column(x + radius); c++) {
+                int cell = r * columns + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    double dx = cellNodes[i].position.x - x;
+                    double dy = cellNodes[i].position.y - y;
+                    double distance = dx * dx + dy * dy;
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = cellNodes[i];
+                    }
+                }
+            }
+        }
+        return best;
+    }
 
-                for (int next = 0; next < vertices; next++) {
-                    if (parent[next] == -1 && capacity[current][next] - flow[current][next] > 0) {
-                        parent[next] = current;
-                        queue.add(next);
-                        if (next == sink) break;
+    public void forEachIn(double x0, double y0, double x1, double y1, java.util.function.Consumer<GraphNode> action) {
+        if (columns == 0 || x1 < minX || y1 < minY
+                || x0 > minX + columns * cellSize || y0 > minY + rows * cellSize) {
+            return;
+        }
+        for (int r = row(y0); r <= row(y1); r++) {
+            for (int c = column(x0); c <= column(x1); c++) {
+                int cell = r * columns + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    GraphNode node = cellNodes[i];
+                    if (node.position.x >= x0 && node.position.x <= x1
+                            && node.position.y >= y0 && node.position.y <= y1) {
+                        action.accept(node);
                     }
                 }
             }
+        }
+    }
+}
 
-            if (parent[sink] == -1) break;
+// Quadtree over body positions for Barnes-Hut force approximation, kept in
+// flat primitive arrays so it can be rebuilt every iteration without garbage
+class BarnesHutTree {
+    private static final int MAX_DEPTH = 48;
+    private static final int EMPTY = -1;
+    private static final int INTERNAL = -2;
 
-            int pathFlow = Integer.MAX_VALUE;
-            for (int v = sink; v != source; v = parent[v]) {
-                int u = parent[v];
-                pathFlow = Math.min(pathFlow, capacity[u][v] - flow[u][v]);
-            }
+    private int cells;
+    private int[] child = new int[0];
+    private int[] body = new int[0];
+    private double[] mass = new double[0];
+    private double[] sumX = new double[0];
+    private double[] sumY = new double[0];
+    private double[] centerX = new double[0];
+    private double[] centerY = new double[0];
+    private double[] half = new double[0];
+    private double[] x;
+    private double[] y;
+
+    public void build(double[] x, double[] y, int n) {
+        this.x = x;
+        this.y = y;
+        cells = 0;
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        int root = newCell((minX + maxX) / 2, (minY + maxY) / 2,
+                           Math.max(maxX - minX, maxY - minY) / 2 + 1);
+        for (int i = 0; i < n; i++) {
+            insert(root, i);
+        }
+    }
 
-            for (int v = sink; v != source; v = parent[v]) {
-                int u = parent[v];
-                flow[u][v] += pathFlow;
-                flow[v][u] -= pathFlow;
+    private void insert(int root, int b) {
+        int c = root;
+        for (int depth = 0; ; depth++) {
+            if (body[c] == EMPTY && mass[c] == 0) {
+                addMass(c, b);
+                body[c] = b;
+                return;
+            }
+            if (body[c] >= 0) {
+                if (depth >= MAX_DEPTH) {
+                    // Practically coincident bodies are merged into one leaf
+                    addMass(c, b);
+                    return;
+                }
+                int old = body[c];
+                body[c] = INTERNAL;
+                int oldChild = childFor(c, x[old], y[old]);
+                addMass(oldChild, old);
+                body[oldChild] = old;
             }
+            addMass(c, b);
+            c = childFor(c, x[b], y[b]);
+        }
+    }
 
-            maxFlow += pathFlow;
+    private void addMass(int c, int b) {
+        mass[c] += 1;
+        sumX[c] += x[b];
+        sumY[c] += y[b];
+    }
+
+    private int childFor(int c, double px, double py) {
+        int quadrant = (px >= centerX[c] ? 1 : 0) | (py >= centerY[c] ? 2 : 0);
+        int slot = 4 * c + quadrant;
+        if (child[slot] == EMPTY) {
+            double h = half[c] / 2;
+            int created = newCell(centerX[c] + ((quadrant & 1) != 0 ? h : -h),
+                                  centerY[c] + ((quadrant & 2) != 0 ? h : -h), h);
+            child[slot] = created;
         }
+        return child[slot];
+    }
 
-        return maxFlow;
+    private int newCell(double cx, double cy, double h) {
+        if (cells == half.length) {
+            int grown = Math.max(64, 2 * cells);
+            child = Arrays.copyOf(child, 4 * grown);
+            Arrays.fill(child, 4 * cells, 4 * grown, EMPTY);
+            body = Arrays.copyOf(body, grown);
+            mass = Arrays.copyOf(mass, grown);
+            sumX = Arrays.copyOf(sumX, grown);
+            sumY = Arrays.copyOf(sumY, grown);
+            centerX = Arrays.copyOf(centerX, grown);
+            centerY = Arrays.copyOf(centerY, grown);
+            half = Arrays.copyOf(half, grown);
+        }
+        int c = cells++;
+        child[4 * c] = child[4 * c + 1] = child[4 * c + 2] = child[4 * c + 3] = EMPTY;
+        body[c] = EMPTY;
+        mass[c] = 0;
+        sumX[c] = 0;
+        sumY[c] = 0;
+        centerX[c] = cx;
+        centerY[c] = cy;
+        half[c] = h;
+        return c;
     }
 
-    public int[][] getFlow() {
-        return flow;
+    // Adds the repulsion k^2 / d from every other body on body i to force[0..1].
+    // Cells that look smaller than theta from i are treated as one mass.
+    public void repulsion(int i, double theta, double k2, int[] stack, double[] force) {
+        double px = x[i];
+        double py = y[i];
+        double theta2 = theta * theta;
+        double fx = 0;
+        double fy = 0;
+        int top = 0;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int c = stack[--top];
+            double m = mass[c];
+            double mx = sumX[c];
+            double my = sumY[c];
+            if (body[c] >= 0) {
+                if (body[c] == i) {
+                    // Leave out the body's own contribution
+                    m -= 1;
+                    mx -= px;
+                    my -= py;
+                }
+                if (m <= 0) continue;
+            } else if (body[c] == INTERNAL) {
+                double dx = px - mx / m;
+                double dy = py - my / m;
+                double size = 2 * half[c];
+                if (size * size >= theta2 * (dx * dx + dy * dy)) {
+                    for (int q = 0; q < 4; q++) {
+                        if (child[4 * c + q] != EMPTY) {
+                            stack[top++] = child[4 * c + q];
+                        }
+                    }
+                    continue;
+                }
+            } else {
+                continue;
+            }
+
+            double dx = px - mx / m;
+            double dy = py - my / m;
+            double d2 = Math.max(dx * dx + dy * dy, 0.01);
+            fx += dx * k2 * m / d2;
+            fy += dy * k2 * m / d2;
+        }
+        force[0] += fx;
+        force[1] += fy;
     }
-}
 
-class GraphNode {
-    int id;
-    Point2D.Double position;
-    
-    public GraphNode(int id, Point2D.Double position) {
-        this.id = id;
-        this.position = position;
+    public static int stackSize() {
+        return 4 * MAX_DEPTH + 8;
     }
 }
 
-class GraphEdge {
-    GraphNode from;
-    GraphNode to;
-    int capacity;
-    int flow;
-    
-    public GraphEdge(GraphNode from, GraphNode to, int capacity) {
-        this.from = from;
-        this.to = to;
-        this.capacity = capacity;
-        this.flow = 0;
+// Fruchterman-Reingold layout with Barnes-Hut repulsion. Runs on its own
+// thread, splits the force pass across the common fork-join pool and hands
+// positions to the panel at most every PUBLISH_INTERVAL_MS.
+class ForceLayout implements Runnable {
+    private static final double IDEAL_EDGE_LENGTH = 80;
+    private static final double THETA = 0.9;
+    private static final double GRAVITY = 0.1;
+    private static final double COOLING = 0.985;
+    private static final int MAX_ITERATIONS = 1000;
+    private static final long PUBLISH_INTERVAL_MS = 40;
+    private static final int CHUNK = 256;
+
+    private final int n;
+    private final double[] x;
+    private final double[] y;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final java.util.function.BiConsumer<double[], double[]> publisher;
+    private volatile boolean stopped;
+
+    public ForceLayout(double[] x, double[] y, int[] edgeFrom, int[] edgeTo,
+                       java.util.function.BiConsumer<double[], double[]> publisher) {
+        this.n = x.length;
+        this.x = x;
+        this.y = y;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.publisher = publisher;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    @Override
+    public void run() {
+        if (n == 0) {
+            stopped = true;
+            return;
+        }
+        double k = IDEAL_EDGE_LENGTH;
+        double k2 = k * k;
+        double[] fx = new double[n];
+        double[] fy = new double[n];
+        BarnesHutTree tree = new BarnesHutTree();
+        Random random = new Random(n);
+
+        // Nudge coincident nodes apart so the tree can separate them
+        for (int i = 0; i < n; i++) {
+            x[i] += random.nextDouble() - 0.5;
+            y[i] += random.nextDouble() - 0.5;
+        }
+
+        // Gravity pulls towards the starting centroid so components stay together
+        double centroidX = 0;
+        double centroidY = 0;
+        for (int i = 0; i < n; i++) {
+            centroidX += x[i] / n;
+            centroidY += y[i] / n;
+        }
+        double cx = centroidX;
+        double cy = centroidY;
+
+        double temperature = k * Math.sqrt(n) / 4 + k;
+        long lastPublish = 0;
+        int chunks = (n + CHUNK - 1) / CHUNK;
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS && !stopped && temperature > k / 100; iteration++) {
+            tree.build(x, y, n);
+
+            java.util.stream.IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int[] stack = new int[BarnesHutTree.stackSize()];
+                double[] force = new double[2];
+                int end = Math.min(n, (chunk + 1) * CHUNK);
+                for (int i = chunk * CHUNK; i < end; i++) {
+                    force[0] = -GRAVITY * (x[i] - cx);
+                    force[1] = -GRAVITY * (y[i] - cy);
+                    tree.repulsion(i, THETA, k2, stack, force);
+                    fx[i] = force[0];
+                    fy[i] = force[1];
+                }
+            });
+
+            // Attraction d^2 / k along every edge
+            for (int e = 0; e < edgeFrom.length; e++) {
+                int u = edgeFrom[e];
+                int v = edgeTo[e];
+                double dx = x[u] - x[v];
+                double dy = y[u] - y[v];
+                double d = Math.sqrt(dx * dx + dy * dy);
+                fx[u] -= dx * d / k;
+                fy[u] -= dy * d / k;
+                fx[v] += dx * d / k;
+                fy[v] += dy * d / k;
+            }
+
+            double limit = temperature;
+            java.util.stream.IntStream.range(0, n).parallel().forEach(i -> {
+                double length = Math.sqrt(fx[i] * fx[i] + fy[i] * fy[i]);
+                if (length > 0) {
+                    double step = Math.min(length, limit) / length;
+                    x[i] += fx[i] * step;
+                    y[i] += fy[i] * step;
+                }
+            });
+            temperature *= COOLING;
+
+            long now = System.nanoTime();
+            if (now - lastPublish > PUBLISH_INTERVAL_MS * 1_000_000) {
+                lastPublish = now;
+                publisher.accept(x.clone(), y.clone());
+            }
+        }
+
+        publisher.accept(x.clone(), y.clone());
+        stopped = true;
     }
 }
 
 class GraphPanel extends JPanel {
     private ArrayList<GraphNode> nodes;
     private ArrayList<GraphEdge> edges;
+    // Lookups for addEdge: node by id, edge by (from id << 32 | to id)
+    private final HashMap<Integer, GraphNode> nodesById = new HashMap<>();
+    private final HashMap<Long, GraphEdge> edgesByPair = new HashMap<>();
     private GraphNode selectedNode;
     private GraphNode sourceNode;
     private GraphNode sinkNode;
     private static final int NODE_RADIUS = 20;
     private static final Color NODE_COLOR = new Color(100, 149, 237); // Cornflower blue
+    private static final Color SOURCE_SIDE_COLOR = new Color(60, 179, 113); // Medium sea green
+    private static final Color CUT_COLOR = new Color(220, 20, 60); // Crimson
+    private static final BasicStroke EDGE_STROKE = new BasicStroke(2);
+    private static final BasicStroke CUT_STROKE = new BasicStroke(4);
+    private static final BasicStroke THIN_STROKE = new BasicStroke(1);
+
+    // Level of detail: below these sizes labels, arrowheads and outlines are dropped
+    private static final double LABEL_MIN_RADIUS = 10;
+    private static final double OUTLINE_MIN_RADIUS = 4;
+    private static final int LABEL_MAX_EDGES = 2000;
+    private static final int ANTIALIAS_MAX_ELEMENTS = 5000;
+
+    // View transform: screen = world * scale + offset
+    private double scale = 1;
+    private double offsetX;
+    private double offsetY;
+
+    private final NodeGrid grid = new NodeGrid();
+    private boolean gridDirty = true;
+
+    // Everything except the node being dragged is rendered once into this layer
+    private BufferedImage layer;
+    private boolean layerDirty = true;
+    private Set<GraphEdge> dragEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Point panStart;
+    private int panDx;
+    private int panDy;
+    
+    private ForceLayout layout;
+    private final java.util.concurrent.atomic.AtomicReference<double[][]> pendingLayout =
+        new java.util.concurrent.atomic.AtomicReference<>();
     
     public GraphPanel() {
         nodes = new ArrayList<>();
@@ -109,11 +2609,32 @@ class GraphPanel extends JPanel {
             @Override
             public void mousePressed(MouseEvent e) {
                 selectedNode = findNode(e.getPoint());
+                if (selectedNode != null) {
+                    for (GraphEdge edge : edges) {
+                        if (edge.from == selectedNode || edge.to == selectedNode) {
+                            dragEdges.add(edge);
+                        }
+                    }
+                    invalidateLayer();
+                } else {
+                    panStart = e.getPoint();
+                }
             }
             
             @Override
             public void mouseReleased(MouseEvent e) {
-                selectedNode = null;
+                if (selectedNode != null) {
+                    selectedNode = null;
+                    dragEdges.clear();
+                    invalidateLayout();
+                } else if (panStart != null) {
+                    offsetX += panDx;
+                    offsetY += panDy;
+                    panStart = null;
+                    panDx = 0;
+                    panDy = 0;
+                    invalidateLayer();
+                }
             }
         });
         
@@ -121,11 +2642,26 @@ class GraphPanel extends JPanel {
             @Override
             public void mouseDragged(MouseEvent e) {
                 if (selectedNode != null) {
-                    selectedNode.position = new Point2D.Double(e.getX(), e.getY());
+                    selectedNode.position = new Point2D.Double(toWorldX(e.getX()), toWorldY(e.getY()));
+                    repaint();
+                } else if (panStart != null) {
+                    // Only the cached layer moves while panning; it is redrawn on release
+                    panDx = e.getX() - panStart.x;
+                    panDy = e.getY() - panStart.y;
                     repaint();
                 }
             }
         });
+        
+        addMouseWheelListener(e -> {
+            double factor = Math.pow(1.1, -e.getPreciseWheelRotation());
+            double newScale = Math.max(0.01, Math.min(20, scale * factor));
+            // Zoom about the cursor
+            offsetX = e.getX() - (e.getX() - offsetX) * newScale / scale;
+            offsetY = e.getY() - (e.getY() - offsetY) * newScale / scale;
+            scale = newScale;
+            invalidateLayer();
+        });
     }
 
     public ArrayList<GraphEdge> getEdges() {
@@ -136,122 +2672,337 @@ class GraphPanel extends JPanel {
         return nodes.size();
     }
     
-    private GraphNode findNode(Point p) {
-        for (GraphNode node : nodes) {
-            if (Point2D.distance(node.position.x, node.position.y, p.x, p.y) < NODE_RADIUS) {
-                return node;
+    public boolean isLayoutRunning() {
+        return layout != null && !layout.isStopped();
+    }
+    
+    // Starts a force-directed layout from the current positions on a background thread
+    public void startLayout() {
+        stopLayout();
+        GraphNode[] snapshot = nodes.toArray(new GraphNode[0]);
+        IdentityHashMap<GraphNode, Integer> index = new IdentityHashMap<>();
+        double[] x = new double[snapshot.length];
+        double[] y = new double[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            index.put(snapshot[i], i);
+            x[i] = snapshot[i].position.x;
+            y[i] = snapshot[i].position.y;
+        }
+        int[] from = new int[edges.size()];
+        int[] to = new int[edges.size()];
+        for (int e = 0; e < from.length; e++) {
+            from[e] = index.get(edges.get(e).from);
+            to[e] = index.get(edges.get(e).to);
+        }
+        
+        // Only one position update is queued on the EDT at a time; newer ones replace it
+        layout = new ForceLayout(x, y, from, to, (px, py) -> {
+            if (pendingLayout.getAndSet(new double[][]{px, py}) == null) {
+                SwingUtilities.invokeLater(() -> applyLayout(snapshot));
+            }
+        });
+        Thread thread = new Thread(layout, "force-layout");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public void stopLayout() {
+        if (layout != null) {
+            layout.stop();
+        }
+    }
+    
+    private void applyLayout(GraphNode[] snapshot) {
+        double[][] positions = pendingLayout.getAndSet(null);
+        if (positions == null) {
+            return;
+        }
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] != selectedNode) {
+                snapshot[i].position.x = positions[0][i];
+                snapshot[i].position.y = positions[1][i];
             }
         }
-        return null;
+        fitToView();
+        invalidateLayout();
+    }
+    
+    // Zooms and centres the view on the bounding box of all nodes
+    public void fitToView() {
+        if (nodes.isEmpty() || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (GraphNode node : nodes) {
+            minX = Math.min(minX, node.position.x);
+            minY = Math.min(minY, node.position.y);
+            maxX = Math.max(maxX, node.position.x);
+            maxY = Math.max(maxY, node.position.y);
+        }
+        double width = maxX - minX + 4 * NODE_RADIUS;
+        double height = maxY - minY + 4 * NODE_RADIUS;
+        scale = Math.max(0.01, Math.min(1, Math.min(getWidth() / width, getHeight() / height)));
+        offsetX = getWidth() / 2.0 - (minX + maxX) / 2 * scale;
+        offsetY = getHeight() / 2.0 - (minY + maxY) / 2 * scale;
+        layerDirty = true;
+    }
+    
+    private double toWorldX(double screenX) {
+        return (screenX - offsetX) / scale;
+    }
+    
+    private double toWorldY(double screenY) {
+        return (screenY - offsetY) / scale;
+    }
+    
+    private void invalidateLayer() {
+        layerDirty = true;
+        repaint();
+    }
+    
+    private void invalidateLayout() {
+        gridDirty = true;
+        invalidateLayer();
+    }
+    
+    private GraphNode findNode(Point p) {
+        if (gridDirty) {
+            grid.rebuild(nodes);
+            gridDirty = false;
+        }
+        return grid.nearest(toWorldX(p.x), toWorldY(p.y), NODE_RADIUS);
     }
     
     public void addNode(int id) {
-        double x = Math.random() * (getWidth() - 2 * NODE_RADIUS) + NODE_RADIUS;
-        double y = Math.random() * (getHeight() - 2 * NODE_RADIUS) + NODE_RADIUS;
+        double x = toWorldX(Math.random() * (getWidth() - 2 * NODE_RADIUS) + NODE_RADIUS);
+        double y = toWorldY(Math.random() * (getHeight() - 2 * NODE_RADIUS) + NODE_RADIUS);
         GraphNode node = new GraphNode(id, new Point2D.Double(x, y));
         nodes.add(node);
+        nodesById.putIfAbsent(id, node);
         
         if (nodes.size() == 1) {
             sourceNode = node;
         }
         sinkNode = node;
         
-        repaint();
+        invalidateLayout();
+    }
+    
+    public void addEdge(int fromId, int toId, long capacity) {
+        addEdge(fromId, toId, capacity, 0);
     }
     
-    public void addEdge(int fromId, int toId, int capacity) {
-        GraphNode from = nodes.stream()
-            .filter(n -> n.id == fromId)
-            .findFirst()
-            .orElse(null);
-        GraphNode to = nodes.stream()
-            .filter(n -> n.id == toId)
-            .findFirst()
-            .orElse(null);
+    public void addEdge(int fromId, int toId, long capacity, long cost) {
+        GraphNode from = nodesById.get(fromId);
+        GraphNode to = nodesById.get(toId);
             
         if (from != null && to != null) {
-            edges.add(new GraphEdge(from, to, capacity));
-            repaint();
+            // A repeated pair replaces the capacity, as the old matrix did
+            long pair = (long) fromId << 32 | (toId & 0xFFFFFFFFL);
+            GraphEdge edge = edgesByPair.get(pair);
+            if (edge != null) {
+                edge.capacity = capacity;
+                edge.cost = cost;
+            } else {
+                edge = new GraphEdge(from, to, capacity, cost);
+                edges.add(edge);
+                edgesByPair.put(pair, edge);
+            }
+            invalidateLayer();
+        }
+    }
+    
+    public void updateFlow(long[] flow) {
+        updateFlow(flow, 0, flow.length);
+    }
+    
+    // Applies flow[from..to) to the matching edges, for batched updates
+    public void updateFlow(long[] flow, int from, int to) {
+        for (int i = from; i < to; i++) {
+            edges.get(i).flow = flow[i];
         }
+        invalidateLayer();
     }
     
-    public void updateFlow(int[][] flow) {
+    public void updateMinCut(MinCut cut) {
+        for (GraphNode node : nodes) {
+            node.sourceSide = cut.isOnSourceSide(node.id);
+        }
         for (GraphEdge edge : edges) {
-            edge.flow = flow[edge.from.id][edge.to.id];
+            edge.inCut = false;
         }
-        repaint();
+        for (int e : cut.getCutEdges()) {
+            edges.get(e).inCut = true;
+        }
+        invalidateLayer();
     }
     
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
-        // Draw edges
+        if (layerDirty || layer == null
+                || layer.getWidth() != getWidth() || layer.getHeight() != getHeight()) {
+            renderLayer();
+        }
+        g2d.drawImage(layer, panDx, panDy, null);
+        
+        // The dragged node and its edges are the only things drawn per frame
+        if (selectedNode != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            double radius = NODE_RADIUS * scale;
+            boolean labels = radius >= LABEL_MIN_RADIUS;
+            for (GraphEdge edge : dragEdges) {
+                drawEdge(g2d, edge, radius, labels);
+            }
+            drawNode(g2d, selectedNode, radius);
+        }
+    }
+    
+    private void renderLayer() {
+        int width = Math.max(1, getWidth());
+        int height = Math.max(1, getHeight());
+        if (layer == null || layer.getWidth() != width || layer.getHeight() != height) {
+            layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        if (gridDirty) {
+            grid.rebuild(nodes);
+            gridDirty = false;
+        }
+        
+        Graphics2D g2d = layer.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        
+        double radius = NODE_RADIUS * scale;
+        double margin = NODE_RADIUS;
+        double x0 = toWorldX(0) - margin;
+        double y0 = toWorldY(0) - margin;
+        double x1 = toWorldX(width) + margin;
+        double y1 = toWorldY(height) + margin;
+        
+        // Cull edges whose bounding box misses the viewport
+        ArrayList<GraphEdge> visibleEdges = new ArrayList<>();
         for (GraphEdge edge : edges) {
-            g2d.setStroke(new BasicStroke(2));
             Point2D.Double from = edge.from.position;
             Point2D.Double to = edge.to.position;
-            
-            drawArrow(g2d, from, to);
-            
-            String flowText = edge.flow + "/" + edge.capacity;
-            Point2D.Double mid = new Point2D.Double(
-                (from.x + to.x) / 2,
-                (from.y + to.y) / 2
-            );
-            g2d.setColor(Color.BLUE);
-            g2d.drawString(flowText, (float)mid.x + 5, (float)mid.y + 5);
+            if (Math.max(from.x, to.x) >= x0 && Math.min(from.x, to.x) <= x1
+                    && Math.max(from.y, to.y) >= y0 && Math.min(from.y, to.y) <= y1
+                    && !dragEdges.contains(edge)) {
+                visibleEdges.add(edge);
+            }
+        }
+        ArrayList<GraphNode> visibleNodes = new ArrayList<>();
+        grid.forEachIn(x0, y0, x1, y1, node -> {
+            if (node != selectedNode) {
+                visibleNodes.add(node);
+            }
+        });
+        
+        if (visibleEdges.size() + visibleNodes.size() <= ANTIALIAS_MAX_ELEMENTS) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        boolean labels = radius >= LABEL_MIN_RADIUS && visibleEdges.size() <= LABEL_MAX_EDGES;
+        
+        // Draw edges
+        for (GraphEdge edge : visibleEdges) {
+            drawEdge(g2d, edge, radius, labels);
         }
         
         // Draw nodes
-        for (GraphNode node : nodes) {
-            // Fill with the standard node color
-            g2d.setColor(NODE_COLOR);
-            g2d.fillOval((int)node.position.x - NODE_RADIUS, 
-                        (int)node.position.y - NODE_RADIUS,
-                        2 * NODE_RADIUS, 
-                        2 * NODE_RADIUS);
-            
-            // Draw border
-            g2d.setColor(Color.BLACK);
-            g2d.drawOval((int)node.position.x - NODE_RADIUS, 
-                        (int)node.position.y - NODE_RADIUS,
-                        2 * NODE_RADIUS, 
-                        2 * NODE_RADIUS);
-            
-            // Draw node ID
+        for (GraphNode node : visibleNodes) {
+            drawNode(g2d, node, radius);
+        }
+        
+        g2d.dispose();
+        layerDirty = false;
+    }
+    
+    private void drawEdge(Graphics2D g2d, GraphEdge edge, double radius, boolean labels) {
+        double fromX = edge.from.position.x * scale + offsetX;
+        double fromY = edge.from.position.y * scale + offsetY;
+        double toX = edge.to.position.x * scale + offsetX;
+        double toY = edge.to.position.y * scale + offsetY;
+        Color color = edge.inCut ? CUT_COLOR : Color.BLACK;
+        
+        if (radius < OUTLINE_MIN_RADIUS) {
+            g2d.setStroke(edge.inCut ? EDGE_STROKE : THIN_STROKE);
+            g2d.setColor(color);
+            g2d.drawLine((int) fromX, (int) fromY, (int) toX, (int) toY);
+            return;
+        }
+        
+        g2d.setStroke(edge.inCut ? CUT_STROKE : EDGE_STROKE);
+        drawArrow(g2d, fromX, fromY, toX, toY, radius, color);
+        
+        if (labels) {
+            g2d.setColor(Color.BLUE);
+            g2d.drawString(edge.cost != 0
+                        ? edge.flow + "/" + edge.capacity + " @" + edge.cost
+                        : edge.flow + "/" + edge.capacity,
+                        (float) ((fromX + toX) / 2) + 5,
+                        (float) ((fromY + toY) / 2) + 5);
+        }
+    }
+    
+    private void drawNode(Graphics2D g2d, GraphNode node, double radius) {
+        int x = (int) (node.position.x * scale + offsetX);
+        int y = (int) (node.position.y * scale + offsetY);
+        int r = (int) Math.max(1, radius);
+        
+        // Source side of the last minimum cut is filled in green
+        g2d.setColor(node.sourceSide ? SOURCE_SIDE_COLOR : NODE_COLOR);
+        if (radius < OUTLINE_MIN_RADIUS) {
+            g2d.fillRect(x - r, y - r, 2 * r, 2 * r);
+            return;
+        }
+        g2d.fillOval(x - r, y - r, 2 * r, 2 * r);
+        
+        // Draw border
+        g2d.setColor(Color.BLACK);
+        g2d.setStroke(THIN_STROKE);
+        g2d.drawOval(x - r, y - r, 2 * r, 2 * r);
+        
+        // Draw node ID
+        if (radius >= LABEL_MIN_RADIUS) {
             g2d.setColor(Color.WHITE);
-            g2d.drawString(String.valueOf(node.id), 
-                        (int)node.position.x - 6,
-                        (int)node.position.y + 6);
+            g2d.drawString(String.valueOf(node.id), x - 6, y + 6);
         }
     }
     
-    private void drawArrow(Graphics2D g2d, Point2D.Double from, Point2D.Double to) {
-        double dx = to.x - from.x;
-        double dy = to.y - from.y;
-        double angle = Math.atan2(dy, dx);
+    private void drawArrow(Graphics2D g2d, double fromX, double fromY, double toX, double toY,
+                           double radius, Color color) {
+        double dx = toX - fromX;
+        double dy = toY - fromY;
         double len = Math.sqrt(dx * dx + dy * dy);
+        if (len <= 2 * radius) {
+            return;
+        }
+        double cos = dx / len;
+        double sin = dy / len;
         
-        double startX = from.x + NODE_RADIUS * Math.cos(angle);
-        double startY = from.y + NODE_RADIUS * Math.sin(angle);
-        double endX = from.x + (len - NODE_RADIUS) * Math.cos(angle);
-        double endY = from.y + (len - NODE_RADIUS) * Math.sin(angle);
+        double startX = fromX + radius * cos;
+        double startY = fromY + radius * sin;
+        double endX = fromX + (len - radius) * cos;
+        double endY = fromY + (len - radius) * sin;
         
-        g2d.setColor(Color.BLACK);
-        g2d.draw(new Line2D.Double(startX, startY, endX, endY));
+        g2d.setColor(color);
+        g2d.drawLine((int) startX, (int) startY, (int) endX, (int) endY);
         
-        double arrowLength = 15;
+        double arrowLength = 15 * Math.min(1, scale);
+        double angle = Math.atan2(dy, dx);
         double arrowAngle = Math.PI / 6;
-        double x1 = endX - arrowLength * Math.cos(angle - arrowAngle);
-        double y1 = endY - arrowLength * Math.sin(angle - arrowAngle);
-        double x2 = endX - arrowLength * Math.cos(angle + arrowAngle);
-        double y2 = endY - arrowLength * Math.sin(angle + arrowAngle);
-        
-        g2d.draw(new Line2D.Double(endX, endY, x1, y1));
-        g2d.draw(new Line2D.Double(endX, endY, x2, y2));
+        g2d.drawLine((int) endX, (int) endY,
+                    (int) (endX - arrowLength * Math.cos(angle - arrowAngle)),
+                    (int) (endY - arrowLength * Math.sin(angle - arrowAngle)));
+        g2d.drawLine((int) endX, (int) endY,
+                    (int) (endX - arrowLength * Math.cos(angle + arrowAngle)),
+                    (int) (endY - arrowLength * Math.sin(angle + arrowAngle)));
     }
 }
 
@@ -259,6 +3010,16 @@ public class EdmondsKarpGUI {
     private JFrame frame;
     private GraphPanel graphPanel;
     private JTextArea outputArea;
+    private JComboBox<String> algorithmComboBox;
+    private JTextField sourceField;
+    private JTextField sinkField;
+    private JCheckBox metricsCheckBox;
+    private IncrementalMaxFlow solver;
+    private long[] solvedCapacity = new long[0];
+    private long[] solvedCost = new long[0];
+    private MaxFlowWorker worker;
+    private JButton calculateButton;
+    private JButton cancelButton;
     private ArrayList<GraphEdge> edges;
     private static int nodeCount = 0;
     
@@ -285,16 +3046,26 @@ public class EdmondsKarpGUI {
             frame.repaint();
         });
         addNodePanel.add(addNodeButton);
+        JButton layoutButton = new JButton("Auto Layout");
+        layoutButton.addActionListener(e -> {
+            if (graphPanel.isLayoutRunning()) {
+                graphPanel.stopLayout();
+            } else {
+                graphPanel.startLayout();
+            }
+        });
+        addNodePanel.add(layoutButton);
         controlPanel.add(addNodePanel);
         
         // Add Edge section
         JPanel addEdgePanel = new JPanel();
         addEdgePanel.setBorder(BorderFactory.createTitledBorder("Add Edge"));
-        addEdgePanel.setLayout(new GridLayout(4, 2, 5, 5));
+        addEdgePanel.setLayout(new GridLayout(5, 2, 5, 5));
         
         JTextField fromField = new JTextField(5);
         JTextField toField = new JTextField(5);
         JTextField capacityField = new JTextField(5);
+        JTextField costField = new JTextField(5);
         
         addEdgePanel.add(new JLabel("From:"));
         addEdgePanel.add(fromField);
@@ -302,18 +3073,23 @@ public class EdmondsKarpGUI {
         addEdgePanel.add(toField);
         addEdgePanel.add(new JLabel("Capacity:"));
         addEdgePanel.add(capacityField);
+        addEdgePanel.add(new JLabel("Cost (optional):"));
+        addEdgePanel.add(costField);
         
         JButton addEdgeButton = new JButton("Add Edge");
         addEdgeButton.addActionListener(e -> {
             try {
                 int from = Integer.parseInt(fromField.getText());
                 int to = Integer.parseInt(toField.getText());
-                int capacity = Integer.parseInt(capacityField.getText());
-                graphPanel.addEdge(from, to, capacity);
+                long capacity = Long.parseLong(capacityField.getText());
+                String costText = costField.getText().trim();
+                long cost = costText.isEmpty() ? 0 : Long.parseLong(costText);
+                graphPanel.addEdge(from, to, capacity, cost);
                 
                 fromField.setText("");
                 toField.setText("");
                 capacityField.setText("");
+                costField.setText("");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(frame, 
                     "Please enter valid numbers", 
@@ -328,9 +3104,25 @@ public class EdmondsKarpGUI {
         // Calculate section
         JPanel calculatePanel = new JPanel();
         calculatePanel.setBorder(BorderFactory.createTitledBorder("Calculate"));
-        JButton calculateButton = new JButton("Calculate Max Flow");
+        algorithmComboBox = new JComboBox<>(MaxFlowAlgorithm.NAMES);
+        calculatePanel.add(algorithmComboBox);
+        sourceField = new JTextField(3);
+        sinkField = new JTextField(3);
+        sourceField.setToolTipText("Source node (default 0)");
+        sinkField.setToolTipText("Sink node (default last node)");
+        calculatePanel.add(new JLabel("Source:"));
+        calculatePanel.add(sourceField);
+        calculatePanel.add(new JLabel("Sink:"));
+        calculatePanel.add(sinkField);
+        metricsCheckBox = new JCheckBox("Collect metrics");
+        calculatePanel.add(metricsCheckBox);
+        calculateButton = new JButton("Calculate Max Flow");
         calculateButton.addActionListener(e -> calculateMaxFlow());
         calculatePanel.add(calculateButton);
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> worker.cancel(true));
+        calculatePanel.add(cancelButton);
         controlPanel.add(calculatePanel);
         
         // Output section
@@ -359,41 +3151,204 @@ public class EdmondsKarpGUI {
                 return;
             }
             
-            Graph graph = new Graph(n);
-            
-            for (GraphEdge edge : graphPanel.getEdges()) {
-                graph.addEdge(edge.from.id, edge.to.id, edge.capacity);
+            String sourceText = sourceField.getText().trim();
+            String sinkText = sinkField.getText().trim();
+            int source = sourceText.isEmpty() ? 0 : Integer.parseInt(sourceText);
+            int sink = sinkText.isEmpty() ? n-1 : Integer.parseInt(sinkText);
+            if (source < 0 || source >= n || sink < 0 || sink >= n || source == sink) {
+                JOptionPane.showMessageDialog(frame, 
+                    "Source and sink must be two different nodes between 0 and " + (n-1),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+                return;
             }
             
-            int maxFlow = graph.maxFlow(0, n-1);
-            int[][] flow = graph.getFlow();
+            MaxFlowAlgorithm algorithm = MaxFlowAlgorithm.forName((String) algorithmComboBox.getSelectedItem());
+            syncSolver(n, source, sink, graphPanel.getEdges(), algorithm);
+            
+            worker = new MaxFlowWorker(solver, metricsCheckBox.isSelected());
+            calculateButton.setEnabled(false);
+            cancelButton.setEnabled(true);
+            outputArea.setText("Running " + algorithm.getName() + "...");
+            worker.execute();
+            
+        } catch (Exception ex) {
+            showSolveError(ex);
+        }
+    }
+    
+    private void showSolveError(Exception ex) {
+        JOptionPane.showMessageDialog(frame, 
+            "Error calculating max flow: " + ex.getMessage(),
+            "Error",
+            JOptionPane.ERROR_MESSAGE);
+    }
+    
+    // Solves off the Event Dispatch Thread. Progress reaches the output area
+    // at most every PROGRESS_INTERVAL_MS, and the per-edge flows are handed
+    // to the panel in FLOW_BATCH_SIZE slices so painting can keep up.
+    private class MaxFlowWorker extends SwingWorker<String, long[]> {
+        private static final long PROGRESS_INTERVAL_MS = 100;
+        private static final int FLOW_BATCH_SIZE = 20000;
+        
+        private final IncrementalMaxFlow task;
+        private final boolean collectMetrics;
+        private long lastPublish;
+        private long[] flow;
+        private MinCut cut;
+        
+        MaxFlowWorker(IncrementalMaxFlow task, boolean collectMetrics) {
+            this.task = task;
+            this.collectMetrics = collectMetrics;
+        }
+        
+        @Override
+        protected String doInBackground() {
+            MaxFlowListener listener = (steps, flowValue) -> {
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                long now = System.nanoTime();
+                if (now - lastPublish > PROGRESS_INTERVAL_MS * 1_000_000) {
+                    lastPublish = now;
+                    publish(new long[]{steps, flowValue});
+                }
+            };
+            MaxFlowMetrics metrics = collectMetrics
+                ? new MaxFlowMetrics(task.getAlgorithm().getName(), listener) : null;
+            long maxFlow = task.solve(metrics != null ? metrics : listener);
             
-            graphPanel.updateFlow(flow);
+            Graph graph = task.getGraph();
+            flow = graph.getFlow();
+            cut = graph.minCut(task.getSource());
             
             StringBuilder result = new StringBuilder();
-            result.append("Maximum Flow: ").append(maxFlow).append("\n\n");
+            result.append("Algorithm: ").append(task.getAlgorithm().getName()).append("\n");
+            result.append("Source: ").append(task.getSource())
+                  .append(", Sink: ").append(task.getSink()).append("\n");
+            result.append("Maximum Flow: ").append(maxFlow).append("\n");
+            if (graph.hasCosts()) {
+                result.append("Total Cost: ").append(graph.getTotalCost()).append("\n");
+            }
+            if (task.getSolveCount() > 1) {
+                result.append("Warm start: reused ").append(task.getReusedFlow())
+                      .append(", augmented ").append(task.getAddedFlow())
+                      .append(" after ").append(task.getChangesApplied()).append(" changes\n");
+            }
+            if (metrics != null) {
+                result.append("\n").append(metrics.snapshot());
+            }
+            result.append("\n");
             result.append("Flow through each edge:\n");
             
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    if (flow[i][j] > 0) {
-                        result.append(i).append(" -> ").append(j)
-                              .append(": ").append(flow[i][j]).append("\n");
+            for (int i = 0; i < flow.length; i++) {
+                if (flow[i] > 0) {
+                    result.append(graph.getFrom(i)).append(" -> ").append(graph.getTo(i))
+                          .append(": ").append(flow[i]);
+                    if (graph.getCost(i) != 0) {
+                        result.append(" x cost ").append(graph.getCost(i))
+                              .append(" = ").append(flow[i] * graph.getCost(i));
                     }
+                    result.append("\n");
                 }
             }
             
-            outputArea.setText(result.toString());
-            
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(frame, 
-                "Error calculating max flow: " + ex.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE);
+            result.append("\nMinimum Cut: ").append(cut.getValue())
+                  .append(" (").append(cut.getSourceSideSize()).append(" nodes on source side)\n");
+            for (int e : cut.getCutEdges()) {
+                result.append(graph.getFrom(e)).append(" -> ").append(graph.getTo(e))
+                      .append(": ").append(graph.getCapacity(e)).append("\n");
+            }
+            return result.toString();
+        }
+        
+        @Override
+        protected void process(java.util.List<long[]> chunks) {
+            long[] latest = chunks.get(chunks.size() - 1);
+            outputArea.setText("Running " + task.getAlgorithm().getName() + "...\n"
+                + "Steps: " + latest[0] + "\n"
+                + "Flow so far: " + latest[1]);
+        }
+        
+        @Override
+        protected void done() {
+            calculateButton.setEnabled(true);
+            cancelButton.setEnabled(false);
+            if (isCancelled()) {
+                // The residual graph may hold a partial preflow, so start over next time
+                solver = null;
+                outputArea.setText("Cancelled.");
+                return;
+            }
+            try {
+                outputArea.setText(get());
+                pushFlowInBatches();
+            } catch (InterruptedException | ExecutionException ex) {
+                solver = null;
+                showSolveError(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+            }
+        }
+        
+        private void pushFlowInBatches() {
+            int[] next = {0};
+            javax.swing.Timer timer = new javax.swing.Timer(15, null);
+            timer.addActionListener(e -> {
+                int end = Math.min(next[0] + FLOW_BATCH_SIZE, flow.length);
+                graphPanel.updateFlow(flow, next[0], end);
+                next[0] = end;
+                if (end == flow.length) {
+                    timer.stop();
+                    graphPanel.updateMinCut(cut);
+                }
+            });
+            timer.setInitialDelay(0);
+            timer.start();
+        }
+    }
+    
+    // Reuses the previous solve when the graph only gained edges or capacity
+    private void syncSolver(int n, int source, int sink, ArrayList<GraphEdge> panelEdges, MaxFlowAlgorithm algorithm) {
+        boolean reusable = solver != null
+            && solver.getGraph().getVertexCount() == n
+            && solver.getSource() == source
+            && solver.getSink() == sink
+            && solver.getAlgorithm().getName().equals(algorithm.getName())
+            && solvedCapacity.length <= panelEdges.size();
+        for (int i = 0; reusable && i < solvedCapacity.length; i++) {
+            reusable = panelEdges.get(i).capacity >= solvedCapacity[i]
+                && panelEdges.get(i).cost == solvedCost[i];
+        }
+        
+        if (!reusable) {
+            solver = new IncrementalMaxFlow(new Graph(n, panelEdges.size()), source, sink, algorithm);
+            solvedCapacity = new long[0];
+            solvedCost = new long[0];
+        }
+        
+        for (int i = 0; i < solvedCapacity.length; i++) {
+            long delta = panelEdges.get(i).capacity - solvedCapacity[i];
+            if (delta > 0) {
+                solver.increaseCapacity(i, delta);
+            }
+        }
+        for (int i = solvedCapacity.length; i < panelEdges.size(); i++) {
+            GraphEdge edge = panelEdges.get(i);
+            solver.addEdge(edge.from.id, edge.to.id, edge.capacity, edge.cost);
+        }
+        
+        solvedCapacity = new long[panelEdges.size()];
+        solvedCost = new long[panelEdges.size()];
+        for (int i = 0; i < solvedCapacity.length; i++) {
+            solvedCapacity[i] = panelEdges.get(i).capacity;
+            solvedCost[i] = panelEdges.get(i).cost;
         }
     }
     
     public static void main(String[] args) {
+        if (args.length > 0) {
+            DimacsMaxFlow.run(args);
+            return;
+        }
         SwingUtilities.invokeLater(EdmondsKarpGUI::new);
     }
 }
\ No newline at end of file
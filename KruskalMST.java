@@ -1,3 +1,4 @@
+import java.io.*;
 import java.util.*;
 
 class DisjointSet {
@@ -32,57 +33,367 @@ class DisjointSet {
     }
 }
 
+// Edges packed into parallel int arrays: one slot per edge instead of one
+// int[] object, so 100M edges take 1.2 GB rather than several.
+class EdgeArray {
+    private int[] weight, from, to;
+    private int size;
+
+    public EdgeArray(int capacity) {
+        capacity = Math.max(capacity, 4);
+        weight = new int[capacity];
+        from = new int[capacity];
+        to = new int[capacity];
+    }
+
+    public static EdgeArray of(List<int[]> edges) {
+        EdgeArray array = new EdgeArray(edges.size());
+        for (int[] edge : edges) {
+            array.add(edge[1], edge[2], edge[0]);  // {weight, u, v}
+        }
+        return array;
+    }
+
+    public void add(int u, int v, int wt) {
+        if (size == weight.length) {
+            int capacity = (int) Math.min(2L * size, Integer.MAX_VALUE - 8);
+            weight = Arrays.copyOf(weight, capacity);
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+        }
+        weight[size] = wt;
+        from[size] = u;
+        to[size] = v;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int weight(int i) {
+        return weight[i];
+    }
+
+    public int u(int i) {
+        return from[i];
+    }
+
+    public int v(int i) {
+        return to[i];
+    }
+
+    // Stable LSD radix sort on weight, one byte per pass. Bytes that are the
+    // same for every edge (the high bytes of small weights) are skipped.
+    public void sortByWeight() {
+        int[][] counts = new int[4][257];
+        for (int i = 0; i < size; i++) {
+            int key = weight[i] ^ Integer.MIN_VALUE;  // negative weights first
+            counts[0][(key & 0xFF) + 1]++;
+            counts[1][(key >>> 8 & 0xFF) + 1]++;
+            counts[2][(key >>> 16 & 0xFF) + 1]++;
+            counts[3][(key >>> 24) + 1]++;
+        }
+        int[] weightTmp = null, fromTmp = null, toTmp = null;
+        for (int pass = 0; pass < 4; pass++) {
+            int[] start = counts[pass];
+            int shift = pass * 8;
+            boolean trivial = false;
+            for (int b = 1; b <= 256; b++) {
+                if (start[b] == size) {
+                    trivial = true;
+                }
+                start[b] += start[b - 1];
+            }
+            if (trivial) {
+                continue;
+            }
+            if (weightTmp == null) {
+                weightTmp = new int[size];
+                fromTmp = new int[size];
+                toTmp = new int[size];
+            }
+            for (int i = 0; i < size; i++) {
+                int key = weight[i] ^ Integer.MIN_VALUE;
+                int slot = start[key >>> shift & 0xFF]++;
+                weightTmp[slot] = weight[i];
+                fromTmp[slot] = from[i];
+                toTmp[slot] = to[i];
+            }
+            int[] swap = weight;
+            weight = weightTmp;
+            weightTmp = swap;
+            swap = from;
+            from = fromTmp;
+            fromTmp = swap;
+            swap = to;
+            to = toTmp;
+            toTmp = swap;
+        }
+    }
+}
+
+// Told about each step of kruskalMST. NONE ignores everything, so the
+// solver itself never builds a string; edgeConsidered always comes right
+// before the matching edgeIncluded or edgeSkipped.
+interface MstListener {
+    MstListener NONE = new MstListener() { };
+
+    default void sortStarted(int edgeCount) { }
+
+    default void edgeSorted(int u, int v, int wt) { }
+
+    default void processingStarted() { }
+
+    default void edgeConsidered(int u, int v, int wt, int parentU, int parentV) { }
+
+    default void edgeIncluded(int u, int v, int wt) { }
+
+    default void edgeSkipped(int u, int v, int wt) { }
+
+    default void finished(int mstWeight) { }
+}
+
+// Prints every step to System.out, the way kruskalMST always used to
+class VerboseMstListener implements MstListener {
+    private final List<int[]> mstEdges = new ArrayList<>();
+
+    @Override
+    public void sortStarted(int edgeCount) {
+        System.out.println("Sorting edges by weight...");
+    }
+
+    @Override
+    public void edgeSorted(int u, int v, int wt) {
+        System.out.println("Edge: " + u + " - " + v + " with weight: " + wt);
+    }
+
+    @Override
+    public void processingStarted() {
+        System.out.println("\nProcessing edges...");
+    }
+
+    @Override
+    public void edgeConsidered(int u, int v, int wt, int parentU, int parentV) {
+        System.out.println("Considering edge " + u + " - " + v + " with weight: " + wt);
+        System.out.println("Parent of " + u + " is " + parentU);
+        System.out.println("Parent of " + v + " is " + parentV);
+    }
+
+    @Override
+    public void edgeIncluded(int u, int v, int wt) {
+        System.out.println("Edge " + u + " - " + v + " will be included in the MST.");
+        System.out.println();
+        mstEdges.add(new int[]{u, v, wt});
+    }
+
+    @Override
+    public void edgeSkipped(int u, int v, int wt) {
+        System.out.println("Edge " + u + " - " + v + " creates a cycle and is skipped.");
+        System.out.println();
+    }
+
+    @Override
+    public void finished(int mstWeight) {
+        System.out.println("The edges in the Minimum Spanning Tree are:");
+        for (int[] mstEdge : mstEdges) {
+            System.out.println("Edge: " + mstEdge[0] + " - " + mstEdge[1] + " with weight: " + mstEdge[2]);
+        }
+        mstEdges.clear();
+    }
+}
+
+// Writes the run as a binary trace: MAGIC, then one tagged record per
+// event with big-endian int fields. A decision is a single record holding
+// the edge and both parents, tagged INCLUDED or SKIPPED. replay() feeds a
+// trace back into any listener, e.g. VerboseMstListener to read it.
+class MstTraceListener implements MstListener, Closeable {
+    static final byte[] MAGIC = {'M', 'S', 'T', 'T', 'R', 'C', '0', '1'};
+    static final int SORT_STARTED = 1, SORTED = 2, PROCESSING = 3, INCLUDED = 4, SKIPPED = 5, FINISHED = 6;
+
+    private final DataOutputStream out;
+    private int parentU, parentV;
+
+    public MstTraceListener(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out.write(MAGIC);
+    }
+
+    @Override
+    public void sortStarted(int edgeCount) {
+        record(SORT_STARTED, edgeCount);
+    }
+
+    @Override
+    public void edgeSorted(int u, int v, int wt) {
+        record(SORTED, u, v, wt);
+    }
+
+    @Override
+    public void processingStarted() {
+        record(PROCESSING);
+    }
+
+    @Override
+    public void edgeConsidered(int u, int v, int wt, int parentU, int parentV) {
+        // Written together with the decision
+        this.parentU = parentU;
+        this.parentV = parentV;
+    }
+
+    @Override
+    public void edgeIncluded(int u, int v, int wt) {
+        record(INCLUDED, u, v, wt, parentU, parentV);
+    }
+
+    @Override
+    public void edgeSkipped(int u, int v, int wt) {
+        record(SKIPPED, u, v, wt, parentU, parentV);
+    }
+
+    @Override
+    public void finished(int mstWeight) {
+        record(FINISHED, mstWeight);
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void record(int tag, int... fields) {
+        try {
+            out.writeByte(tag);
+            for (int field : fields) {
+                out.writeInt(field);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    public static void replay(InputStream trace, MstListener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(trace, 1 << 16));
+        byte[] header = new byte[MAGIC.length];
+        in.readFully(header);
+        if (!Arrays.equals(header, MAGIC)) {
+            throw new IOException("Not an MST trace");
+        }
+        int tag;
+        while ((tag = in.read()) != -1) {
+            switch (tag) {
+                case SORT_STARTED:
+                    listener.sortStarted(in.readInt());
+                    break;
+                case SORTED:
+                    listener.edgeSorted(in.readInt(), in.readInt(), in.readInt());
+                    break;
+                case PROCESSING:
+                    listener.processingStarted();
+                    break;
+                case INCLUDED:
+                case SKIPPED: {
+                    int u = in.readInt(), v = in.readInt(), wt = in.readInt();
+                    listener.edgeConsidered(u, v, wt, in.readInt(), in.readInt());
+                    if (tag == INCLUDED) {
+                        listener.edgeIncluded(u, v, wt);
+                    } else {
+                        listener.edgeSkipped(u, v, wt);
+                    }
+                    break;
+                }
+                case FINISHED:
+                    listener.finished(in.readInt());
+                    break;
+                default:
+                    throw new IOException("Unknown record tag " + tag);
+            }
+        }
+    }
+}
+
 class Solution {
     public int kruskalMST(int V, List<int[]> edges) {
+        return kruskalMST(V, EdgeArray.of(edges), MstListener.NONE);
+    }
+
+    public int kruskalMST(int V, List<int[]> edges, MstListener listener) {
+        return kruskalMST(V, EdgeArray.of(edges), listener);
+    }
+
+    public int kruskalMST(int V, EdgeArray edges, MstListener listener) {
         DisjointSet ds = new DisjointSet(V);
+        int E = edges.size();
         
         // Sort edges by weight
-        System.out.println("Sorting edges by weight...");
-        edges.sort(Comparator.comparingInt(a -> a[0]));
-        for (int[] edge : edges) {
-            System.out.println("Edge: " + edge[1] + " - " + edge[2] + " with weight: " + edge[0]);
+        listener.sortStarted(E);
+        edges.sortByWeight();
+        if (listener != MstListener.NONE) {
+            for (int i = 0; i < E; i++) {
+                listener.edgeSorted(edges.u(i), edges.v(i), edges.weight(i));
+            }
         }
 
         int mstWt = 0;
-        List<int[]> mstEdges = new ArrayList<>();
 
-        System.out.println("\nProcessing edges...");
-        for (int[] edge : edges) {
-            int wt = edge[0];
-            int u = edge[1];
-            int v = edge[2];
+        listener.processingStarted();
+        for (int i = 0; i < E; i++) {
+            int wt = edges.weight(i);
+            int u = edges.u(i);
+            int v = edges.v(i);
             
             // Find the ultimate parent of u and v
             int parentU = ds.findUPar(u);
             int parentV = ds.findUPar(v);
-            System.out.println("Considering edge " + u + " - " + v + " with weight: " + wt);
-            System.out.println("Parent of " + u + " is " + parentU);
-            System.out.println("Parent of " + v + " is " + parentV);
+            listener.edgeConsidered(u, v, wt, parentU, parentV);
             
             // If parents are different, include this edge in the MST
             if (parentU != parentV) {
-                System.out.println("Edge " + u + " - " + v + " will be included in the MST.");
+                listener.edgeIncluded(u, v, wt);
                 mstWt += wt;
                 ds.unionBySize(u, v);
-                mstEdges.add(new int[]{u, v, wt});  // Add this edge to the MST list
             } else {
-                System.out.println("Edge " + u + " - " + v + " creates a cycle and is skipped.");
+                listener.edgeSkipped(u, v, wt);
             }
-            System.out.println();
         }
         
-        // Print the MST
-        System.out.println("The edges in the Minimum Spanning Tree are:");
-        for (int[] mstEdge : mstEdges) {
-            System.out.println("Edge: " + mstEdge[0] + " - " + mstEdge[1] + " with weight: " + mstEdge[2]);
-        }
-
+        listener.finished(mstWt);
         return mstWt;
     }
 }
 
+// Usage: java KruskalMST [--quiet] [--trace FILE]
+//        java KruskalMST --dump FILE
+// Prints every step unless --quiet is given; --trace also records the run
+// as a binary MST trace, and --dump prints a recorded trace.
 public class KruskalMST {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        boolean quiet = false;
+        String trace = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.equals("--trace") && hasValue) {
+                trace = args[++i];
+            } else if (arg.equals("--dump") && hasValue) {
+                try (InputStream in = new FileInputStream(args[++i])) {
+                    MstTraceListener.replay(in, new VerboseMstListener());
+                }
+                return;
+            } else {
+                System.err.println("Unknown option or missing value: " + arg);
+                System.err.println("Usage: java KruskalMST [--quiet] [--trace FILE] | --dump FILE");
+                System.exit(2);
+            }
+        }
+
         Scanner sc = new Scanner(System.in);
 
         System.out.print("Enter the number of vertices: ");
@@ -91,20 +402,78 @@ public class KruskalMST {
         System.out.print("Enter the number of edges: ");
         int E = sc.nextInt();
 
-        List<int[]> edges = new ArrayList<>();
+        EdgeArray edges = new EdgeArray(E);
         System.out.println("Enter the edges in the format: node1 node2 weight");
         for (int i = 0; i < E; i++) {
             int u = sc.nextInt();
             int v = sc.nextInt();
             int w = sc.nextInt();
-            edges.add(new int[]{w, u, v});  // Storing edges as {weight, u, v}
+            edges.add(u, v, w);
+        }
+
+        MstListener listener = quiet ? MstListener.NONE : new VerboseMstListener();
+        MstTraceListener tracer = trace == null ? null : new MstTraceListener(new FileOutputStream(trace));
+        if (tracer != null) {
+            listener = listener == MstListener.NONE ? tracer : both(listener, tracer);
         }
 
         Solution sol = new Solution();
-        int mstWeight = sol.kruskalMST(V, edges);
+        int mstWeight;
+        try {
+            mstWeight = sol.kruskalMST(V, edges, listener);
+        } finally {
+            if (tracer != null) {
+                tracer.close();
+            }
+        }
         System.out.println("The weight of the Minimum Spanning Tree is: " + mstWeight);
         
         sc.close();
     }
-}
 
+    private static MstListener both(MstListener first, MstListener second) {
+        return new MstListener() {
+            @Override
+            public void sortStarted(int edgeCount) {
+                first.sortStarted(edgeCount);
+                second.sortStarted(edgeCount);
+            }
+
+            @Override
+            public void edgeSorted(int u, int v, int wt) {
+                first.edgeSorted(u, v, wt);
+                second.edgeSorted(u, v, wt);
+            }
+
+            @Override
+            public void processingStarted() {
+                first.processingStarted();
+                second.processingStarted();
+            }
+
+            @Override
+            public void edgeConsidered(int u, int v, int wt, int parentU, int parentV) {
+                first.edgeConsidered(u, v, wt, parentU, parentV);
+                second.edgeConsidered(u, v, wt, parentU, parentV);
+            }
+
+            @Override
+            public void edgeIncluded(int u, int v, int wt) {
+                first.edgeIncluded(u, v, wt);
+                second.edgeIncluded(u, v, wt);
+            }
+
+            @Override
+            public void edgeSkipped(int u, int v, int wt) {
+                first.edgeSkipped(u, v, wt);
+                second.edgeSkipped(u, v, wt);
+            }
+
+            @Override
+            public void finished(int mstWeight) {
+                first.finished(mstWeight);
+                second.finished(mstWeight);
+            }
+        };
+    }
+}